@@ -0,0 +1,12 @@
+package com.androsz.electricsleepbeta.analysis;
+
+/**
+ * An {@link XYSource} of epochs that also knows how much each epoch moved.
+ */
+public interface ActivitySource extends XYSource {
+	/**
+	 * The mean net force of the epoch at index; 0 for a gap. Unlike the
+	 * integrated activity count it does not depend on the sensor rate.
+	 */
+	float getActivity(int index);
+}
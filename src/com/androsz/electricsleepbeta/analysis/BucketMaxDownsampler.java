@@ -0,0 +1,67 @@
+package com.androsz.electricsleepbeta.analysis;
+
+/**
+ * Splits the series into equal runs of points and keeps one point per run,
+ * at the run's first x. The value is the run's max, unless an averaging
+ * threshold is set and the max stays below it, in which case it is the run's
+ * average. That keeps spikes at full height while flattening quiet stretches,
+ * which is what sessions have always been stored as.
+ */
+public final class BucketMaxDownsampler implements Downsampler {
+
+	private final double mAverageBelow;
+
+	/**
+	 * Always keep the max.
+	 */
+	public BucketMaxDownsampler() {
+		this(Double.NEGATIVE_INFINITY);
+	}
+
+	/**
+	 * Keep the max of runs that reach averageBelow, the average of the rest.
+	 */
+	public BucketMaxDownsampler(final double averageBelow) {
+		mAverageBelow = averageBelow;
+	}
+
+	@Override
+	public int downsample(final XYSource source, final int maxPoints, final double[] outX,
+			final double[] outY) {
+		final int size = source.size();
+		if (size <= maxPoints) {
+			return Downsamplers.copy(source, outX, outY);
+		}
+
+		int written = 0;
+		int start = 0;
+		for (int bucket = 0; bucket < maxPoints; bucket++) {
+			final int end = (int) ((long) (bucket + 1) * size / maxPoints);
+			double x = 0;
+			double max = Double.NEGATIVE_INFINITY;
+			double total = 0;
+			int count = 0;
+			for (int i = start; i < end; i++) {
+				final double y = source.getY(i);
+				if (Double.isNaN(y)) {
+					continue;
+				}
+				if (count++ == 0) {
+					x = source.getX(i);
+				}
+				if (y > max) {
+					max = y;
+				}
+				total += y;
+			}
+			start = end;
+			if (count == 0) {
+				continue;
+			}
+			outX[written] = x;
+			outY[written] = max < mAverageBelow ? total / count : max;
+			written++;
+		}
+		return written;
+	}
+}
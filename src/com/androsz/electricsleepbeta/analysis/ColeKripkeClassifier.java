@@ -0,0 +1,45 @@
+package com.androsz.electricsleepbeta.analysis;
+
+/**
+ * Cole-Kripke (1992) scoring for one-minute epochs: an epoch is sleep when
+ * P * (W-4 A-4 + ... + W0 A0 + ... + W+2 A+2) is below 1, where A are the
+ * activity counts of the four epochs before and the two after it. As in
+ * the usual ActiGraph adaptation, counts are divided by 100 and capped at 300
+ * first. Epochs beyond either end of the night count as no activity.
+ */
+public final class ColeKripkeClassifier implements SleepWakeClassifier {
+
+	private static final double P = 0.001;
+
+	/** Weights of the epochs at offsets -4 to +2. */
+	private static final double[] WEIGHTS = { 106, 54, 58, 76, 230, 74, 67 };
+	private static final int BEFORE = 4;
+
+	private static final float COUNT_DIVISOR = 100;
+	private static final float MAX_SCALED_COUNT = 300;
+
+	/**
+	 * Alone, a minute is wake once P * 230 * count / 100 reaches 1, at 434.8;
+	 * rounded up so the sum is not short of 1 by a rounding error.
+	 */
+	private static final float WAKE_COUNT = 435;
+
+	@Override
+	public void classify(final float[] counts, final int count, final byte[] out) {
+		for (int i = 0; i < count; i++) {
+			double sum = 0;
+			final int first = Math.max(0, i - BEFORE);
+			final int last = Math.min(count - 1, i + WEIGHTS.length - 1 - BEFORE);
+			for (int j = first; j <= last; j++) {
+				sum += WEIGHTS[j - i + BEFORE]
+						* Math.min(counts[j] / COUNT_DIVISOR, MAX_SCALED_COUNT);
+			}
+			out[i] = P * sum < 1 ? SLEEP : WAKE;
+		}
+	}
+
+	@Override
+	public float getWakeCount() {
+		return WAKE_COUNT;
+	}
+}
@@ -0,0 +1,19 @@
+package com.androsz.electricsleepbeta.analysis;
+
+/**
+ * Reduces a series to at most a given number of points. Implementations make
+ * a single O(n) pass over the source, skip gaps and write into caller
+ * supplied arrays, so they allocate nothing that grows with the input.
+ *
+ * @see Downsamplers
+ */
+public interface Downsampler {
+
+	/**
+	 * Downsample source into outX/outY, which must hold at least maxPoints
+	 * points. A source that already fits is copied without its gaps.
+	 *
+	 * @return the number of points written.
+	 */
+	int downsample(XYSource source, int maxPoints, double[] outX, double[] outY);
+}
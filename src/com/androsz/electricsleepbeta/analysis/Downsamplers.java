@@ -0,0 +1,47 @@
+package com.androsz.electricsleepbeta.analysis;
+
+/**
+ * The downsampler to use for each purpose.
+ */
+public final class Downsamplers {
+
+	private static final Downsampler DISPLAY = new LttbDownsampler();
+
+	/**
+	 * For points that are analyzed after being stored: spikes keep their
+	 * height and quiet stretches are averaged, so thresholds against the
+	 * calibration level still mean the same thing.
+	 */
+	public static Downsampler forStorage(final float calibrationLevel) {
+		return new BucketMaxDownsampler(calibrationLevel);
+	}
+
+	/**
+	 * For points that are only drawn.
+	 */
+	public static Downsampler forDisplay() {
+		return DISPLAY;
+	}
+
+	/**
+	 * Copy the points of source into outX/outY, leaving out gaps.
+	 *
+	 * @return the number of points written.
+	 */
+	static int copy(final XYSource source, final double[] outX, final double[] outY) {
+		final int size = source.size();
+		int written = 0;
+		for (int i = 0; i < size; i++) {
+			final double y = source.getY(i);
+			if (!Double.isNaN(y)) {
+				outX[written] = source.getX(i);
+				outY[written] = y;
+				written++;
+			}
+		}
+		return written;
+	}
+
+	private Downsamplers() {
+	}
+}
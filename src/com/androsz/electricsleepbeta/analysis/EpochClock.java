@@ -0,0 +1,88 @@
+package com.androsz.electricsleepbeta.analysis;
+
+/**
+ * Splits a stream of monotonic sensor timestamps into fixed-length epochs.
+ *
+ * Epoch boundaries are counted from the first sample's timestamp, so they do
+ * not drift with scheduling delays, and each epoch is anchored to the wall
+ * clock reading taken at that first sample. Every epoch is reported exactly
+ * once, when the first sample past its end arrives. Epochs in which no sample
+ * arrived at all (the device suspended or the sensor stalled) are reported
+ * together as a single gap.
+ *
+ * Not thread safe; drive it from the thread that consumes the samples.
+ */
+public final class EpochClock {
+
+	/**
+	 * Receives closed epochs in order.
+	 */
+	public interface Listener {
+		/**
+		 * The epoch ending at epochEndMillis (wall clock) is closed.
+		 */
+		void onEpoch(long epochEndMillis);
+
+		/**
+		 * epochCount consecutive epochs starting at gapStartMillis received no
+		 * samples.
+		 */
+		void onGap(long gapStartMillis, int epochCount);
+	}
+
+	private final long mEpochNanos;
+	private final long mEpochMillis;
+
+	private boolean mStarted;
+	private long mOriginNanos;
+	private long mOriginMillis;
+
+	/** Index of the epoch samples are currently added to. */
+	private long mEpoch;
+
+	/** Sensor timestamp at which the current epoch ends. */
+	private long mEpochEndNanos;
+
+	public EpochClock(final long epochMillis) {
+		if (epochMillis < 1) {
+			throw new IllegalArgumentException("epochMillis must be positive: " + epochMillis);
+		}
+		mEpochMillis = epochMillis;
+		mEpochNanos = epochMillis * 1000 * 1000;
+	}
+
+	/**
+	 * Close every epoch that ended before timestampNanos. Call it for each
+	 * sample before adding the sample to the current epoch; the first call
+	 * starts the clock.
+	 */
+	public void advance(final long timestampNanos, final Listener listener) {
+		if (!mStarted) {
+			mStarted = true;
+			mOriginNanos = timestampNanos;
+			mOriginMillis = System.currentTimeMillis();
+			mEpoch = 0;
+			mEpochEndNanos = timestampNanos + mEpochNanos;
+			return;
+		}
+		if (timestampNanos < mEpochEndNanos) {
+			return;
+		}
+
+		final long epoch = (timestampNanos - mOriginNanos) / mEpochNanos;
+		final long closed = mEpoch;
+		mEpoch = epoch;
+		mEpochEndNanos = mOriginNanos + (epoch + 1) * mEpochNanos;
+
+		listener.onEpoch(getEpochStartMillis(closed + 1));
+		final long empty = epoch - closed - 1;
+		if (empty > 0) {
+			listener.onGap(getEpochStartMillis(closed + 1),
+					(int) Math.min(Integer.MAX_VALUE, empty));
+		}
+	}
+
+	private long getEpochStartMillis(final long epoch) {
+		return mOriginMillis + epoch * mEpochMillis;
+	}
+}
@@ -0,0 +1,108 @@
+package com.androsz.electricsleepbeta.analysis;
+
+/**
+ * Reduces the net force samples of an epoch to a handful of features without
+ * keeping the samples: max, mean and variance (Welford's method), the number
+ * of upward crossings of a threshold and an integrated activity count.
+ *
+ * Each sample is weighted by the time since the one before it, so the mean,
+ * variance and activity describe the epoch's time span whatever the sensor
+ * rate was, and stay comparable when the rate changes mid-night. The max and
+ * the crossings are per sample; a slow rate can miss a brief peak.
+ *
+ * Memory use is constant and nothing is allocated per sample. Not thread
+ * safe; add samples and close epochs on the thread that consumes the samples.
+ */
+public final class EpochFeatureAggregator {
+
+	/**
+	 * Net force below this is treated as sensor noise when integrating
+	 * activity.
+	 */
+	public static final float DEFAULT_ACTIVITY_DEAD_BAND = 0.05f;
+
+	/**
+	 * Longest time one sample stands for; a longer silence is a suspend, not
+	 * a slow sensor.
+	 */
+	private static final long MAX_SAMPLE_NANOS = 1000 * 1000 * 1000L;
+
+	private final float mActivityDeadBand;
+	private float mCrossingThreshold;
+
+	private int mCount;
+	private float mMax;
+	private double mWeight;
+	private double mMean;
+	private double mM2;
+	private int mCrossings;
+	private boolean mAboveThreshold;
+	private double mActivity;
+	private long mLastTimestampNanos = -1;
+
+	public EpochFeatureAggregator(final float crossingThreshold) {
+		this(crossingThreshold, DEFAULT_ACTIVITY_DEAD_BAND);
+	}
+
+	public EpochFeatureAggregator(final float crossingThreshold, final float activityDeadBand) {
+		mCrossingThreshold = crossingThreshold;
+		mActivityDeadBand = activityDeadBand;
+	}
+
+	/**
+	 * Add the net force of one sample, taken at timestampNanos on the
+	 * sensor's monotonic clock, to the current epoch.
+	 */
+	public void add(final float netForce, final long timestampNanos) {
+		mCount++;
+		if (netForce > mMax) {
+			mMax = netForce;
+		}
+
+		// the first sample only starts the clock.
+		final double seconds = mLastTimestampNanos < 0 ? 0 : Math.min(
+				Math.max(0, timestampNanos - mLastTimestampNanos), MAX_SAMPLE_NANOS) / 1e9;
+		mLastTimestampNanos = timestampNanos;
+		if (seconds > 0) {
+			mWeight += seconds;
+			final double delta = netForce - mMean;
+			mMean += delta * seconds / mWeight;
+			mM2 += seconds * delta * (netForce - mMean);
+			if (netForce > mActivityDeadBand) {
+				mActivity += (netForce - mActivityDeadBand) * seconds;
+			}
+		}
+
+		final boolean above = netForce >= mCrossingThreshold;
+		if (above && !mAboveThreshold) {
+			mCrossings++;
+		}
+		mAboveThreshold = above;
+	}
+
+	/**
+	 * Copy the features of the current epoch into out and start a new epoch.
+	 * Whether the signal is above the threshold carries over, so a movement
+	 * that spans an epoch boundary is only counted once.
+	 */
+	public void closeEpoch(final EpochFeatures out) {
+		out.sampleCount = mCount;
+		out.max = mMax;
+		out.mean = (float) mMean;
+		out.variance = mWeight > 0 ? (float) (mM2 / mWeight) : 0;
+		out.crossings = mCrossings;
+		out.activityCount = (float) mActivity;
+
+		mCount = 0;
+		mMax = 0;
+		mWeight = 0;
+		mMean = 0;
+		mM2 = 0;
+		mCrossings = 0;
+		mActivity = 0;
+	}
+
+	public void setCrossingThreshold(final float crossingThreshold) {
+		mCrossingThreshold = crossingThreshold;
+	}
+}
@@ -0,0 +1,37 @@
+package com.androsz.electricsleepbeta.analysis;
+
+/**
+ * Movement features of one closed epoch, as produced by
+ * {@link EpochFeatureAggregator}. Live monitoring hands each epoch's features
+ * to another thread, so it takes a new instance per epoch; one every few
+ * seconds is not worth pooling.
+ */
+public final class EpochFeatures {
+
+	/** Number of samples that fell into the epoch. */
+	public int sampleCount;
+
+	/** Largest net force. */
+	public float max;
+
+	/** Mean net force over the epoch's time span. */
+	public float mean;
+
+	/** Population variance of the net force over the epoch's time span. */
+	public float variance;
+
+	/** Number of times the net force rose above the crossing threshold. */
+	public int crossings;
+
+	/** Net force above the activity dead band integrated over the epoch, in seconds. */
+	public float activityCount;
+
+	public void clear() {
+		sampleCount = 0;
+		max = 0;
+		mean = 0;
+		variance = 0;
+		crossings = 0;
+		activityCount = 0;
+	}
+}
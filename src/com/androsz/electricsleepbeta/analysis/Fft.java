@@ -0,0 +1,114 @@
+package com.androsz.electricsleepbeta.analysis;
+
+/**
+ * In-place radix-2 complex FFT over primitive arrays, and the
+ * autocorrelation built on it.
+ */
+public final class Fft {
+
+	/**
+	 * Smallest power of two at least n.
+	 */
+	public static int ceilPowerOfTwo(final int n) {
+		int size = 1;
+		while (size < n) {
+			size <<= 1;
+		}
+		return size;
+	}
+
+	/**
+	 * Transform re/im in place; their length must be a power of two. The
+	 * inverse transform is scaled by 1/n.
+	 */
+	public static void transform(final double[] re, final double[] im, final boolean inverse) {
+		final int n = re.length;
+		if (n != im.length || Integer.bitCount(n) != 1) {
+			throw new IllegalArgumentException("length must be a power of two: " + n);
+		}
+
+		// bit reversal permutation
+		for (int i = 1, j = 0; i < n; i++) {
+			int bit = n >> 1;
+			for (; (j & bit) != 0; bit >>= 1) {
+				j ^= bit;
+			}
+			j ^= bit;
+			if (i < j) {
+				double t = re[i];
+				re[i] = re[j];
+				re[j] = t;
+				t = im[i];
+				im[i] = im[j];
+				im[j] = t;
+			}
+		}
+
+		for (int length = 2; length <= n; length <<= 1) {
+			final double angle = (inverse ? 2 : -2) * Math.PI / length;
+			final double stepRe = Math.cos(angle);
+			final double stepIm = Math.sin(angle);
+			final int half = length >> 1;
+			for (int start = 0; start < n; start += length) {
+				double wRe = 1;
+				double wIm = 0;
+				for (int k = 0; k < half; k++) {
+					final int a = start + k;
+					final int b = a + half;
+					final double bRe = re[b] * wRe - im[b] * wIm;
+					final double bIm = re[b] * wIm + im[b] * wRe;
+					re[b] = re[a] - bRe;
+					im[b] = im[a] - bIm;
+					re[a] += bRe;
+					im[a] += bIm;
+					final double nextRe = wRe * stepRe - wIm * stepIm;
+					wIm = wRe * stepIm + wIm * stepRe;
+					wRe = nextRe;
+				}
+			}
+		}
+
+		if (inverse) {
+			for (int i = 0; i < n; i++) {
+				re[i] /= n;
+				im[i] /= n;
+			}
+		}
+	}
+
+	/**
+	 * Autocorrelation of the first count values of series, with its mean
+	 * removed, normalized so lag 0 is 1. Lags 0 to count - 1 are written to
+	 * out. A constant series has no correlation and gives all zeros.
+	 */
+	public static void autocorrelate(final double[] series, final int count, final double[] out) {
+		double mean = 0;
+		for (int i = 0; i < count; i++) {
+			mean += series[i];
+		}
+		mean /= Math.max(1, count);
+
+		// zero padded to twice the length so the correlation is not circular
+		final int n = ceilPowerOfTwo(2 * count);
+		final double[] re = new double[n];
+		final double[] im = new double[n];
+		for (int i = 0; i < count; i++) {
+			re[i] = series[i] - mean;
+		}
+
+		transform(re, im, false);
+		for (int i = 0; i < n; i++) {
+			re[i] = re[i] * re[i] + im[i] * im[i];
+			im[i] = 0;
+		}
+		transform(re, im, true);
+
+		final double zero = re[0];
+		for (int lag = 0; lag < count; lag++) {
+			out[lag] = zero > 0 ? re[lag] / zero : 0;
+		}
+	}
+
+	private Fft() {
+	}
+}
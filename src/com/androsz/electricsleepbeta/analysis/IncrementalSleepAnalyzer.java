@@ -0,0 +1,213 @@
+package com.androsz.electricsleepbeta.analysis;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Keeps a night's {@link SleepSummary} up to date one epoch at a time, so the
+ * live screen can show it and saving does not have to downsample and analyze
+ * the night again.
+ *
+ * Epochs are grouped into at most maxPoints groups of equal length; when the
+ * groups run out, neighbours are merged and the length doubles. A group is
+ * stored like a {@link BucketMaxDownsampler} bucket: its max if that reaches
+ * the alarm level, its average otherwise. Spikes and the fell asleep time
+ * follow {@link SleepDataAnalyzer}'s rules on the grouped points and are
+ * derived again only after a change, in time bounded by maxPoints however
+ * long the night is.
+ *
+ * The state is bounded by maxPoints too and can be saved with
+ * {@link #writeState} and restored with {@link #readState}, so a night picked
+ * up after a crash does not have to be fed again from the start.
+ *
+ * Thread safe; it is fed from the thread that closes epochs and read from
+ * anywhere.
+ */
+public final class IncrementalSleepAnalyzer {
+
+	private static final int QUIET_POINTS_TO_FALL_ASLEEP = 5;
+
+	private final float mAlarm;
+	private final int mMaxPoints;
+
+	private final double[] mX;
+	private final double[] mMax;
+	private final double[] mTotal;
+	private final int[] mCount;
+	private int mGroups;
+	private int mGroupLength = 1;
+
+	private int mPointCount;
+	private long mStartTime;
+	private long mEndTime;
+	private double mMin;
+
+	private boolean mStale;
+	private int mSpikes;
+	private long mTimeOfFirstSleep;
+
+	public IncrementalSleepAnalyzer(final float alarm, final int maxPoints) {
+		if (maxPoints < 2) {
+			throw new IllegalArgumentException("maxPoints must be at least 2: " + maxPoints);
+		}
+		mAlarm = alarm;
+		mMaxPoints = maxPoints;
+		mX = new double[maxPoints];
+		mMax = new double[maxPoints];
+		mTotal = new double[maxPoints];
+		mCount = new int[maxPoints];
+	}
+
+	/**
+	 * Add the value of the epoch ending at x. Gaps are simply not added.
+	 */
+	public synchronized void add(final double x, final double y) {
+		if (mPointCount++ == 0) {
+			mStartTime = Math.round(x);
+			mMin = y;
+		} else if (y < mMin) {
+			mMin = y;
+		}
+		mEndTime = Math.round(x);
+
+		if (mGroups == mMaxPoints && mCount[mGroups - 1] >= mGroupLength) {
+			mergeGroups();
+		}
+		final int last = mGroups - 1;
+		if (last < 0 || mCount[last] >= mGroupLength) {
+			mX[mGroups] = x;
+			mMax[mGroups] = y;
+			mTotal[mGroups] = y;
+			mCount[mGroups] = 1;
+			mGroups++;
+		} else {
+			if (y > mMax[last]) {
+				mMax[last] = y;
+			}
+			mTotal[last] += y;
+			mCount[last]++;
+		}
+		mStale = true;
+	}
+
+	public synchronized int getPointCount() {
+		return mPointCount;
+	}
+
+	public synchronized int getSpikes() {
+		update();
+		return mSpikes;
+	}
+
+	/**
+	 * A snapshot of the night so far.
+	 */
+	public synchronized SleepSummary getSummary() {
+		update();
+		final double[] y = new double[mGroups];
+		for (int i = 0; i < mGroups; i++) {
+			y[i] = getValue(i);
+		}
+		return new SleepSummary(mStartTime, mEndTime, mMin, mSpikes, mTimeOfFirstSleep, mX, y,
+				mGroups, mPointCount);
+	}
+
+	public synchronized long getTimeOfFirstSleep() {
+		update();
+		return mTimeOfFirstSleep;
+	}
+
+	/**
+	 * Replace this analyzer's night with one saved by {@link #writeState}
+	 * from an analyzer with the same maxPoints.
+	 *
+	 * @throws IOException
+	 *             if in does not hold such a state.
+	 */
+	public synchronized void readState(final DataInput in) throws IOException {
+		final int groups = in.readInt();
+		final int groupLength = in.readInt();
+		if (groups < 0 || groups > mMaxPoints || groupLength < 1) {
+			throw new IOException("Bad analyzer state: " + groups + " groups of " + groupLength);
+		}
+		for (int i = 0; i < groups; i++) {
+			mX[i] = in.readDouble();
+			mMax[i] = in.readDouble();
+			mTotal[i] = in.readDouble();
+			mCount[i] = in.readInt();
+		}
+		mGroups = groups;
+		mGroupLength = groupLength;
+		mPointCount = in.readInt();
+		mStartTime = in.readLong();
+		mEndTime = in.readLong();
+		mMin = in.readDouble();
+		mStale = true;
+	}
+
+	/**
+	 * Save everything needed to carry on with the night.
+	 */
+	public synchronized void writeState(final DataOutput out) throws IOException {
+		out.writeInt(mGroups);
+		out.writeInt(mGroupLength);
+		for (int i = 0; i < mGroups; i++) {
+			out.writeDouble(mX[i]);
+			out.writeDouble(mMax[i]);
+			out.writeDouble(mTotal[i]);
+			out.writeInt(mCount[i]);
+		}
+		out.writeInt(mPointCount);
+		out.writeLong(mStartTime);
+		out.writeLong(mEndTime);
+		out.writeDouble(mMin);
+	}
+
+	private double getValue(final int group) {
+		return mMax[group] < mAlarm ? mTotal[group] / mCount[group] : mMax[group];
+	}
+
+	/**
+	 * Merge neighbouring groups pairwise and double the group length. A last
+	 * group without a neighbour keeps filling up.
+	 */
+	private void mergeGroups() {
+		int merged = 0;
+		for (int i = 0; i < mGroups; i += 2) {
+			mX[merged] = mX[i];
+			mMax[merged] = mMax[i];
+			mTotal[merged] = mTotal[i];
+			mCount[merged] = mCount[i];
+			if (i + 1 < mGroups) {
+				mMax[merged] = Math.max(mMax[merged], mMax[i + 1]);
+				mTotal[merged] += mTotal[i + 1];
+				mCount[merged] += mCount[i + 1];
+			}
+			merged++;
+		}
+		mGroups = merged;
+		mGroupLength *= 2;
+	}
+
+	private void update() {
+		if (!mStale) {
+			return;
+		}
+		mStale = false;
+		mSpikes = 0;
+		mTimeOfFirstSleep = 0;
+		int consecutiveQuiet = 0;
+		for (int i = 0; i < mGroups; i++) {
+			if (getValue(i) < mAlarm) {
+				if (mTimeOfFirstSleep == 0 && ++consecutiveQuiet >= QUIET_POINTS_TO_FALL_ASLEEP
+						&& i > 0) {
+					mTimeOfFirstSleep = Math.round(mX[i - 1]);
+				}
+			} else {
+				consecutiveQuiet = 0;
+				mSpikes++;
+			}
+		}
+	}
+}
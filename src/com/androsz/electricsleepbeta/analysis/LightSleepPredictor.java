@@ -0,0 +1,209 @@
+package com.androsz.electricsleepbeta.analysis;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Predicts when the sleeper will next be in light sleep from the rhythm of
+ * the night's movement so far, the online counterpart of
+ * {@link SleepCycleDetector}.
+ *
+ * The largest movement of each minute is kept for the last
+ * {@link #HISTORY_MINUTES} minutes. Whenever a minute closes, the cycle
+ * length is taken as the lag with the strongest autocorrelation over that
+ * history and the last cycle boundary as the peak of the smoothed movement
+ * within the last cycle; the next light sleep window is centered one cycle
+ * after it. Memory is constant and the work per epoch is constant too.
+ *
+ * Only the epochs' own times are used, so feeding a saved journal through a
+ * new predictor reproduces the predictions made during the night. Restoring
+ * what {@link #writeState} saved does too, without the feeding.
+ *
+ * Not thread safe; drive it from the thread that closes epochs.
+ */
+public final class LightSleepPredictor {
+
+	public static final long MINUTE_MILLIS = 60 * 1000;
+
+	/** Two of the longest cycles, so a full cycle can always be correlated. */
+	public static final int HISTORY_MINUTES = 2 * SleepCycleDetector.MAX_CYCLE_MINUTES;
+
+	private final double[] mHistory = new double[HISTORY_MINUTES];
+	private final double[] mChronological = new double[HISTORY_MINUTES];
+	private final double[] mSmoothed = new double[HISTORY_MINUTES];
+
+	private boolean mStarted;
+	private long mFirstMinute;
+	private long mMinute;
+	private double mMinuteMax;
+
+	private int mCycleMinutes;
+	private long mLastBoundaryMinute;
+
+	/**
+	 * Add the value of the epoch ending at x; a NaN value is a gap.
+	 */
+	public void add(final double x, final double y) {
+		final long minute = (long) Math.floor(x / MINUTE_MILLIS);
+		if (!mStarted) {
+			mStarted = true;
+			mFirstMinute = minute;
+			mMinute = minute;
+			mMinuteMax = 0;
+		} else if (minute > mMinute) {
+			closeMinutes(minute);
+		}
+		if (y > mMinuteMax) {
+			mMinuteMax = y;
+		}
+	}
+
+	/**
+	 * The current estimate of the cycle length, or 0 if there is no rhythm
+	 * yet.
+	 */
+	public int getCycleMinutes() {
+		return mCycleMinutes;
+	}
+
+	/**
+	 * Start of the next light sleep window, or of the current one if it is
+	 * under way, in the epochs' time base. Negative if there is no rhythm yet.
+	 */
+	public long getNextLightSleepStart() {
+		if (mCycleMinutes == 0) {
+			return -1;
+		}
+		final int halfWindow = getHalfWindowMinutes();
+		long center = mLastBoundaryMinute + mCycleMinutes;
+		while (center + halfWindow < mMinute) {
+			center += mCycleMinutes;
+		}
+		return (center - halfWindow) * MINUTE_MILLIS;
+	}
+
+	/**
+	 * Length of the predicted light sleep window in milliseconds.
+	 */
+	public long getWindowMillis() {
+		return (2 * getHalfWindowMinutes() + 1) * MINUTE_MILLIS;
+	}
+
+	/**
+	 * Replace this predictor's night with one saved by {@link #writeState}.
+	 *
+	 * @throws IOException
+	 *             if in does not hold such a state.
+	 */
+	public void readState(final DataInput in) throws IOException {
+		final int historyMinutes = in.readInt();
+		if (historyMinutes != HISTORY_MINUTES) {
+			throw new IOException("Bad predictor history length " + historyMinutes);
+		}
+		for (int i = 0; i < HISTORY_MINUTES; i++) {
+			mHistory[i] = in.readDouble();
+		}
+		mStarted = in.readBoolean();
+		mFirstMinute = in.readLong();
+		mMinute = in.readLong();
+		mMinuteMax = in.readDouble();
+		mCycleMinutes = in.readInt();
+		mLastBoundaryMinute = in.readLong();
+	}
+
+	public void reset() {
+		mStarted = false;
+		mCycleMinutes = 0;
+	}
+
+	/**
+	 * Save everything needed to carry on with the night.
+	 */
+	public void writeState(final DataOutput out) throws IOException {
+		out.writeInt(HISTORY_MINUTES);
+		for (int i = 0; i < HISTORY_MINUTES; i++) {
+			out.writeDouble(mHistory[i]);
+		}
+		out.writeBoolean(mStarted);
+		out.writeLong(mFirstMinute);
+		out.writeLong(mMinute);
+		out.writeDouble(mMinuteMax);
+		out.writeInt(mCycleMinutes);
+		out.writeLong(mLastBoundaryMinute);
+	}
+
+	/**
+	 * Close the current minute and any empty ones before minute, then
+	 * re-estimate.
+	 */
+	private void closeMinutes(final long minute) {
+		mHistory[(int) (mMinute % HISTORY_MINUTES)] = mMinuteMax;
+		final long empty = Math.min(minute - mMinute - 1, HISTORY_MINUTES);
+		for (long i = 1; i <= empty; i++) {
+			mHistory[(int) ((mMinute + i) % HISTORY_MINUTES)] = 0;
+		}
+		mMinute = minute;
+		mMinuteMax = 0;
+		estimate();
+	}
+
+	private void estimate() {
+		// the closed minutes end just before mMinute
+		final int count = (int) Math.min(HISTORY_MINUTES, mMinute - mFirstMinute);
+		if (count < 2 * SleepCycleDetector.MIN_CYCLE_MINUTES) {
+			mCycleMinutes = 0;
+			return;
+		}
+		final long oldest = mMinute - count;
+		double mean = 0;
+		for (int i = 0; i < count; i++) {
+			final double value = mHistory[(int) ((oldest + i) % HISTORY_MINUTES)];
+			mChronological[i] = value;
+			mean += value;
+		}
+		mean /= count;
+
+		double energy = 0;
+		for (int i = 0; i < count; i++) {
+			mChronological[i] -= mean;
+			energy += mChronological[i] * mChronological[i];
+		}
+		if (energy <= 0) {
+			mCycleMinutes = 0;
+			return;
+		}
+
+		int period = 0;
+		double best = SleepCycleDetector.MIN_CORRELATION;
+		final int maxLag = Math.min(SleepCycleDetector.MAX_CYCLE_MINUTES, count - 1);
+		for (int lag = SleepCycleDetector.MIN_CYCLE_MINUTES; lag <= maxLag; lag++) {
+			double sum = 0;
+			for (int i = lag; i < count; i++) {
+				sum += mChronological[i] * mChronological[i - lag];
+			}
+			final double correlation = sum / energy;
+			if (correlation > best) {
+				best = correlation;
+				period = lag;
+			}
+		}
+		mCycleMinutes = period;
+		if (period == 0) {
+			return;
+		}
+
+		SleepCycleDetector.smooth(mChronological, count, Math.max(1, period / 6), mSmoothed);
+		int peak = count - period;
+		for (int i = peak + 1; i < count; i++) {
+			if (mSmoothed[i] > mSmoothed[peak]) {
+				peak = i;
+			}
+		}
+		mLastBoundaryMinute = oldest + peak;
+	}
+
+	private int getHalfWindowMinutes() {
+		return mCycleMinutes / 6;
+	}
+}
@@ -0,0 +1,102 @@
+package com.androsz.electricsleepbeta.analysis;
+
+/**
+ * Largest-Triangle-Three-Buckets (Steinarsson, 2013). Keeps the first and last
+ * point and, from each bucket in between, the point forming the largest
+ * triangle with the previously kept point and the average of the next bucket.
+ * It preserves the visual shape of a series better than any per-bucket
+ * statistic, so it is meant for display rather than for analysis.
+ */
+public final class LttbDownsampler implements Downsampler {
+
+	@Override
+	public int downsample(final XYSource source, final int maxPoints, final double[] outX,
+			final double[] outY) {
+		final int size = source.size();
+		if (size <= maxPoints) {
+			return Downsamplers.copy(source, outX, outY);
+		}
+		if (maxPoints < 3) {
+			throw new IllegalArgumentException("maxPoints must be at least 3: " + maxPoints);
+		}
+
+		int first = 0;
+		while (first < size && Double.isNaN(source.getY(first))) {
+			first++;
+		}
+		int last = size - 1;
+		while (last > first && Double.isNaN(source.getY(last))) {
+			last--;
+		}
+		if (first == size) {
+			return 0;
+		}
+
+		int written = 0;
+		outX[written] = source.getX(first);
+		outY[written] = source.getY(first);
+		written++;
+		if (last == first) {
+			return written;
+		}
+
+		double ax = outX[0];
+		double ay = outY[0];
+		final int interior = last - first - 1;
+		final int buckets = maxPoints - 2;
+		for (int bucket = 0; bucket < buckets; bucket++) {
+			final int start = first + 1 + (int) ((long) bucket * interior / buckets);
+			final int end = first + 1 + (int) ((long) (bucket + 1) * interior / buckets);
+
+			// average of the next bucket, or the last point after the final one
+			final int nextEnd = bucket + 1 < buckets ? first + 1
+					+ (int) ((long) (bucket + 2) * interior / buckets) : last + 1;
+			double cx = 0;
+			double cy = 0;
+			int count = 0;
+			for (int i = end; i < nextEnd; i++) {
+				final double y = source.getY(i);
+				if (!Double.isNaN(y)) {
+					cx += source.getX(i);
+					cy += y;
+					count++;
+				}
+			}
+			if (count == 0) {
+				cx = source.getX(last);
+				cy = source.getY(last);
+			} else {
+				cx /= count;
+				cy /= count;
+			}
+
+			int chosen = -1;
+			double maxArea = -1;
+			for (int i = start; i < end; i++) {
+				final double y = source.getY(i);
+				if (Double.isNaN(y)) {
+					continue;
+				}
+				final double x = source.getX(i);
+				// twice the triangle's area; only the ordering matters
+				final double area = Math.abs((ax - cx) * (y - ay) - (ax - x) * (cy - ay));
+				if (area > maxArea) {
+					maxArea = area;
+					chosen = i;
+				}
+			}
+			if (chosen < 0) {
+				continue;
+			}
+			ax = source.getX(chosen);
+			ay = source.getY(chosen);
+			outX[written] = ax;
+			outY[written] = ay;
+			written++;
+		}
+
+		outX[written] = source.getX(last);
+		outY[written] = source.getY(last);
+		return written + 1;
+	}
+}
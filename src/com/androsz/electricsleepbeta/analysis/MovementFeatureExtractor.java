@@ -0,0 +1,120 @@
+package com.androsz.electricsleepbeta.analysis;
+
+/**
+ * Turns raw accelerometer samples into a movement magnitude by removing
+ * gravity with a low-pass filter and taking the length of what is left.
+ *
+ * The filter has a time constant rather than a per-sample weight: each
+ * sample's weight follows from the time since the previous one, so the
+ * filter behaves the same when the sensor rate changes mid-night.
+ *
+ * All state lives in primitive fields and nothing is allocated per sample, so
+ * the same instance can be fed at SENSOR_DELAY_FASTEST for a whole night. It
+ * is not thread safe; feed it from one thread only.
+ *
+ * Used by live monitoring (including the calibration wizard's run of
+ * {@link com.androsz.electricsleepbeta.app.SleepMonitoringService}) and by
+ * offline replay of recorded samples through {@link #replay}.
+ */
+public final class MovementFeatureExtractor {
+
+	/**
+	 * Time constant of the gravity filter; the old per-sample weight of 0.8 at
+	 * SENSOR_DELAY_NORMAL's 200ms period.
+	 */
+	public static final long DEFAULT_TIME_CONSTANT_NANOS = 800 * 1000 * 1000L;
+
+	/**
+	 * Number of samples consumed before the filter produces output. The last
+	 * of them seeds the gravity estimate; the ones before are discarded
+	 * while the sensor settles.
+	 */
+	public static final int DEFAULT_WARM_UP_SAMPLES = 5;
+
+	private final long mTimeConstantNanos;
+	private final int mWarmUpSamples;
+
+	private float mGravityX;
+	private float mGravityY;
+	private float mGravityZ;
+
+	private long mLastTimestampNanos;
+
+	private long mSampleCount;
+
+	public MovementFeatureExtractor() {
+		this(DEFAULT_TIME_CONSTANT_NANOS, DEFAULT_WARM_UP_SAMPLES);
+	}
+
+	public MovementFeatureExtractor(final long timeConstantNanos, final int warmUpSamples) {
+		if (timeConstantNanos <= 0) {
+			throw new IllegalArgumentException("timeConstantNanos must be positive: "
+					+ timeConstantNanos);
+		}
+		if (warmUpSamples < 1) {
+			throw new IllegalArgumentException("warmUpSamples must be positive: "
+					+ warmUpSamples);
+		}
+		mTimeConstantNanos = timeConstantNanos;
+		mWarmUpSamples = warmUpSamples;
+	}
+
+	/**
+	 * Feed one sample taken at timestampNanos, on the sensor's monotonic
+	 * clock.
+	 *
+	 * @return the net force of this sample, or 0 while still warming up.
+	 */
+	public float addSample(final float x, final float y, final float z,
+			final long timestampNanos) {
+		final long count = ++mSampleCount;
+		if (count < mWarmUpSamples) {
+			return 0;
+		}
+		final long elapsed = timestampNanos - mLastTimestampNanos;
+		mLastTimestampNanos = timestampNanos;
+		if (count == mWarmUpSamples) {
+			mGravityX = x;
+			mGravityY = y;
+			mGravityZ = z;
+			return 0;
+		}
+
+		// a repeated timestamp leaves the estimate where it was.
+		final float alpha = elapsed <= 0 ? 1 : (float) mTimeConstantNanos
+				/ (mTimeConstantNanos + elapsed);
+		final float beta = 1 - alpha;
+		mGravityX = alpha * mGravityX + beta * x;
+		mGravityY = alpha * mGravityY + beta * y;
+		mGravityZ = alpha * mGravityZ + beta * z;
+
+		final float dx = x - mGravityX;
+		final float dy = y - mGravityY;
+		final float dz = z - mGravityZ;
+
+		return (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+	}
+
+	/**
+	 * Feed count recorded samples starting at offset: interleaved x/y/z in
+	 * xyz, and their times in timestampsNanos.
+	 *
+	 * @return the largest net force among them, or 0 if all were warm up.
+	 */
+	public float replay(final float[] xyz, final long[] timestampsNanos, final int offset,
+			final int count) {
+		float max = 0;
+		for (int i = offset; i < offset + count; i++) {
+			final float netForce = addSample(xyz[i * 3], xyz[i * 3 + 1], xyz[i * 3 + 2],
+					timestampsNanos[i]);
+			if (netForce > max) {
+				max = netForce;
+			}
+		}
+		return max;
+	}
+
+	public boolean isWarmedUp() {
+		return mSampleCount >= mWarmUpSamples;
+	}
+}
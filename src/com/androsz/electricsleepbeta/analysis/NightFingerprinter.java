@@ -0,0 +1,171 @@
+package com.androsz.electricsleepbeta.analysis;
+
+import java.util.Arrays;
+
+/**
+ * Compact, comparable descriptions of a night's movement.
+ *
+ * A night is reduced to {@link #PAA_LENGTH} equal slices of its span, each
+ * the mean of its points (piecewise aggregate approximation), and the slices
+ * are z-normalized so nights compare by shape rather than by level. The SAX
+ * word turns a coarser version of that into a few letters that can be looked
+ * up in an index; candidates are then ranked by dynamic time warping of the
+ * full approximations.
+ */
+public final class NightFingerprinter {
+
+	public static final int PAA_LENGTH = 32;
+
+	/** Letters in the indexed word. */
+	public static final int WORD_LENGTH = 4;
+
+	/** Equiprobable breakpoints of the standard normal for four symbols. */
+	private static final double[] BREAKPOINTS = { -0.6745, 0, 0.6745 };
+
+	/** Sakoe-Chiba band of the warping, in slices. */
+	private static final int WARPING_BAND = PAA_LENGTH / 8;
+
+	/**
+	 * The z-normalized approximation of the non-gap points of source.
+	 */
+	public static float[] approximate(final XYSource source) {
+		final float[] paa = new float[PAA_LENGTH];
+		final int size = source.size();
+		int first = 0;
+		while (first < size && Double.isNaN(source.getY(first))) {
+			first++;
+		}
+		int last = size - 1;
+		while (last > first && Double.isNaN(source.getY(last))) {
+			last--;
+		}
+		if (first >= size) {
+			return paa;
+		}
+
+		final double start = source.getX(first);
+		final double span = Math.max(1, source.getX(last) - start);
+		final double[] sums = new double[PAA_LENGTH];
+		final int[] counts = new int[PAA_LENGTH];
+		for (int i = first; i <= last; i++) {
+			final double y = source.getY(i);
+			if (Double.isNaN(y)) {
+				continue;
+			}
+			final int slice = Math.min(PAA_LENGTH - 1,
+					(int) ((source.getX(i) - start) / span * PAA_LENGTH));
+			sums[slice] += y;
+			counts[slice]++;
+		}
+
+		// a slice without points repeats the one before it
+		double previous = 0;
+		double mean = 0;
+		for (int i = 0; i < PAA_LENGTH; i++) {
+			if (counts[i] > 0) {
+				previous = sums[i] / counts[i];
+			}
+			sums[i] = previous;
+			mean += previous;
+		}
+		mean /= PAA_LENGTH;
+		double variance = 0;
+		for (int i = 0; i < PAA_LENGTH; i++) {
+			variance += (sums[i] - mean) * (sums[i] - mean);
+		}
+		final double deviation = Math.sqrt(variance / PAA_LENGTH);
+		for (int i = 0; i < PAA_LENGTH; i++) {
+			paa[i] = deviation > 0 ? (float) ((sums[i] - mean) / deviation) : 0;
+		}
+		return paa;
+	}
+
+	/**
+	 * The {@link #WORD_LENGTH} letter SAX word, 'a' to 'd', of an
+	 * approximation.
+	 */
+	public static String word(final float[] paa) {
+		final char[] word = new char[WORD_LENGTH];
+		final int perLetter = paa.length / WORD_LENGTH;
+		for (int letter = 0; letter < WORD_LENGTH; letter++) {
+			double sum = 0;
+			for (int i = letter * perLetter; i < (letter + 1) * perLetter; i++) {
+				sum += paa[i];
+			}
+			word[letter] = symbol(sum / perLetter);
+		}
+		return new String(word);
+	}
+
+	/**
+	 * Words whose letters are each at most distance letters away from those
+	 * of word, word itself included.
+	 */
+	public static String[] neighbours(final String word, final int distance) {
+		int total = 1;
+		for (int i = 0; i < word.length(); i++) {
+			total *= 2 * distance + 1;
+		}
+		final String[] result = new String[total];
+		final char[] letters = word.toCharArray();
+		final int found = neighbours(letters, 0, distance, result, 0);
+		final String[] trimmed = new String[found];
+		System.arraycopy(result, 0, trimmed, 0, found);
+		return trimmed;
+	}
+
+	/**
+	 * Dynamic time warping distance between two approximations of equal
+	 * length, within a band of a few slices.
+	 */
+	public static double distance(final float[] a, final float[] b) {
+		final int n = a.length;
+		double[] previous = new double[n + 1];
+		double[] current = new double[n + 1];
+		Arrays.fill(previous, Double.POSITIVE_INFINITY);
+		previous[0] = 0;
+		for (int i = 1; i <= n; i++) {
+			Arrays.fill(current, Double.POSITIVE_INFINITY);
+			final int from = Math.max(1, i - WARPING_BAND);
+			final int to = Math.min(n, i + WARPING_BAND);
+			for (int j = from; j <= to; j++) {
+				final double cost = (a[i - 1] - b[j - 1]) * (a[i - 1] - b[j - 1]);
+				current[j] = cost + Math.min(previous[j - 1], Math.min(previous[j], current[j - 1]));
+			}
+			final double[] swap = previous;
+			previous = current;
+			current = swap;
+		}
+		return Math.sqrt(previous[n]);
+	}
+
+	private static int neighbours(final char[] letters, final int position, final int distance,
+			final String[] out, int found) {
+		if (position == letters.length) {
+			out[found++] = new String(letters);
+			return found;
+		}
+		final char original = letters[position];
+		for (int offset = -distance; offset <= distance; offset++) {
+			final char letter = (char) (original + offset);
+			if (letter < 'a' || letter >= 'a' + BREAKPOINTS.length + 1) {
+				continue;
+			}
+			letters[position] = letter;
+			found = neighbours(letters, position + 1, distance, out, found);
+		}
+		letters[position] = original;
+		return found;
+	}
+
+	private static char symbol(final double value) {
+		int index = 0;
+		while (index < BREAKPOINTS.length && value > BREAKPOINTS[index]) {
+			index++;
+		}
+		return (char) ('a' + index);
+	}
+
+	private NightFingerprinter() {
+	}
+}
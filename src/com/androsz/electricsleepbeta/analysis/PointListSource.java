@@ -0,0 +1,33 @@
+package com.androsz.electricsleepbeta.analysis;
+
+import java.util.List;
+
+import com.androsz.electricsleepbeta.util.PointD;
+
+/**
+ * An {@link XYSource} over points already on the heap, such as a stored
+ * session's data.
+ */
+public final class PointListSource implements XYSource {
+
+	private final List<PointD> mPoints;
+
+	public PointListSource(final List<PointD> points) {
+		mPoints = points;
+	}
+
+	@Override
+	public int size() {
+		return mPoints.size();
+	}
+
+	@Override
+	public double getX(final int index) {
+		return mPoints.get(index).x;
+	}
+
+	@Override
+	public double getY(final int index) {
+		return mPoints.get(index).y;
+	}
+}
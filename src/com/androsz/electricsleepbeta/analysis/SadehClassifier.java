@@ -0,0 +1,84 @@
+package com.androsz.electricsleepbeta.analysis;
+
+/**
+ * Sadeh (1994) scoring for one-minute epochs: an epoch is sleep when
+ * 7.601 - 0.065 MW5 - 1.08 NAT - 0.056 SD6 - 0.703 LG is at least 0, where
+ * over the window from five epochs before to five after MW5 is the mean
+ * count and NAT the number of counts in [50, 100); SD6 is the standard
+ * deviation of the epoch and the five before it and LG is ln(count + 1).
+ * Counts are capped at 300 as in the original. Windows are cut short at
+ * either end of the night.
+ *
+ * The window sums slide, so a night is scored in a single pass.
+ */
+public final class SadehClassifier implements SleepWakeClassifier {
+
+	private static final float MAX_COUNT = 300;
+	private static final int HALF_WINDOW = 5;
+	private static final int SD_WINDOW = 6;
+
+	/**
+	 * Alone among still minutes, a count c gives MW5 = c / 11, SD6 = c / sqrt(6)
+	 * and no NAT, and PS falls below 0 between 142.8 and 142.9.
+	 */
+	private static final float WAKE_COUNT = 143;
+
+	@Override
+	public void classify(final float[] counts, final int count, final byte[] out) {
+		// centered window [i - 5, i + 5]
+		double windowSum = 0;
+		int windowNat = 0;
+		int windowStart = 0;
+		int windowEnd = 0; // exclusive
+
+		// trailing window [i - 5, i]
+		double sdSum = 0;
+		double sdSumOfSquares = 0;
+
+		for (int i = 0; i < count; i++) {
+			while (windowEnd < count && windowEnd <= i + HALF_WINDOW) {
+				final float c = capped(counts[windowEnd++]);
+				windowSum += c;
+				windowNat += isNat(c) ? 1 : 0;
+			}
+			while (windowStart < i - HALF_WINDOW) {
+				final float c = capped(counts[windowStart++]);
+				windowSum -= c;
+				windowNat -= isNat(c) ? 1 : 0;
+			}
+
+			final float current = capped(counts[i]);
+			sdSum += current;
+			sdSumOfSquares += current * current;
+			if (i >= SD_WINDOW) {
+				final float dropped = capped(counts[i - SD_WINDOW]);
+				sdSum -= dropped;
+				sdSumOfSquares -= dropped * dropped;
+			}
+			final int sdCount = Math.min(i + 1, SD_WINDOW);
+			double sd = 0;
+			if (sdCount > 1) {
+				final double variance = (sdSumOfSquares - sdSum * sdSum / sdCount) / (sdCount - 1);
+				sd = variance > 0 ? Math.sqrt(variance) : 0;
+			}
+
+			final double mw5 = windowSum / (windowEnd - windowStart);
+			final double ps = 7.601 - 0.065 * mw5 - 1.08 * windowNat - 0.056 * sd - 0.703
+					* Math.log(current + 1);
+			out[i] = ps >= 0 ? SLEEP : WAKE;
+		}
+	}
+
+	@Override
+	public float getWakeCount() {
+		return WAKE_COUNT;
+	}
+
+	private static float capped(final float count) {
+		return count > MAX_COUNT ? MAX_COUNT : count;
+	}
+
+	private static boolean isNat(final float count) {
+		return count >= 50 && count < 100;
+	}
+}
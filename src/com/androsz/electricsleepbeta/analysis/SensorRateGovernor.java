@@ -0,0 +1,107 @@
+package com.androsz.electricsleepbeta.analysis;
+
+/**
+ * Decides when the accelerometer can be slowed down. After a run of quiet
+ * epochs it asks for the slow rate; the first sample at or above the threshold
+ * asks for the configured rate again, so an arousal is never missed for more
+ * than one slow sample.
+ *
+ * The governor only decides; the caller re-registers the sensor. Because
+ * epochs are timed by sensor timestamps, a change of rate does not move epoch
+ * boundaries. Time spent at each rate is accounted from the same timestamps.
+ *
+ * Not thread safe; drive it from the thread that consumes the samples.
+ */
+public final class SensorRateGovernor {
+
+	/** One minute at the default 5 second epoch. */
+	public static final int DEFAULT_QUIET_EPOCHS = 12;
+
+	private final int mQuietEpochs;
+	private volatile float mThreshold;
+
+	private int mQuietRun;
+	private boolean mSlow;
+
+	private long mLastTimestampNanos = -1;
+	private long mFastNanos;
+	private long mSlowNanos;
+	private int mSwitchCount;
+
+	public SensorRateGovernor(final float threshold) {
+		this(threshold, DEFAULT_QUIET_EPOCHS);
+	}
+
+	public SensorRateGovernor(final float threshold, final int quietEpochs) {
+		if (quietEpochs < 1) {
+			throw new IllegalArgumentException("quietEpochs must be positive: " + quietEpochs);
+		}
+		mThreshold = threshold;
+		mQuietEpochs = quietEpochs;
+	}
+
+	/**
+	 * Account for one sample.
+	 *
+	 * @return true if the sensor should go back to the configured rate.
+	 */
+	public boolean onSample(final float netForce, final long timestampNanos) {
+		if (mLastTimestampNanos >= 0 && timestampNanos > mLastTimestampNanos) {
+			final long elapsed = timestampNanos - mLastTimestampNanos;
+			if (mSlow) {
+				mSlowNanos += elapsed;
+			} else {
+				mFastNanos += elapsed;
+			}
+		}
+		mLastTimestampNanos = timestampNanos;
+
+		if (mSlow && netForce >= mThreshold) {
+			mSlow = false;
+			mQuietRun = 0;
+			mSwitchCount++;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Account for one closed epoch.
+	 *
+	 * @return true if the sensor should drop to the slow rate.
+	 */
+	public boolean onEpoch(final float epochMax) {
+		if (epochMax >= mThreshold) {
+			mQuietRun = 0;
+			return false;
+		}
+		if (++mQuietRun >= mQuietEpochs && !mSlow) {
+			mSlow = true;
+			mSwitchCount++;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Time spent at the configured rate, in milliseconds.
+	 */
+	public long getFastMillis() {
+		return mFastNanos / (1000 * 1000);
+	}
+
+	/**
+	 * Time spent at the slow rate, in milliseconds.
+	 */
+	public long getSlowMillis() {
+		return mSlowNanos / (1000 * 1000);
+	}
+
+	public int getSwitchCount() {
+		return mSwitchCount;
+	}
+
+	public void setThreshold(final float threshold) {
+		mThreshold = threshold;
+	}
+}
@@ -0,0 +1,135 @@
+package com.androsz.electricsleepbeta.analysis;
+
+/**
+ * Estimates the boundaries of the roughly 90 minute ultradian sleep cycles
+ * from a night's movement.
+ *
+ * The epochs are binned into minutes by their x, keeping the largest value
+ * of each. The cycle length is the lag, between {@link #MIN_CYCLE_MINUTES}
+ * and {@link #MAX_CYCLE_MINUTES}, at which the movement correlates best with
+ * itself (by FFT). Cycles end in lighter sleep with more movement, so each
+ * boundary is placed at the peak of the smoothed movement within a third of a
+ * cycle of where the previous boundary plus one cycle predicts it.
+ *
+ * A night that is too short, or whose movement shows no rhythm, has no
+ * boundaries.
+ */
+public final class SleepCycleDetector {
+
+	public static final long BIN_MILLIS = 60 * 1000;
+
+	public static final int MIN_CYCLE_MINUTES = 60;
+	public static final int MAX_CYCLE_MINUTES = 120;
+
+	/** Weakest autocorrelation peak still taken as a rhythm. */
+	static final double MIN_CORRELATION = 0.05;
+
+	private static final long[] NO_BOUNDARIES = new long[0];
+
+	private int mCycleMinutes;
+
+	/**
+	 * Detect the cycle boundaries of the non-gap points of source, binned from
+	 * startTime.
+	 *
+	 * @return the boundary times in ascending order.
+	 */
+	public long[] detect(final XYSource source, final long startTime) {
+		mCycleMinutes = 0;
+		final int size = source.size();
+		int minutes = 0;
+		for (int i = size - 1; i >= 0; i--) {
+			if (!Double.isNaN(source.getY(i))) {
+				minutes = (int) Math.floor((source.getX(i) - startTime) / BIN_MILLIS) + 1;
+				break;
+			}
+		}
+		if (minutes < 2 * MIN_CYCLE_MINUTES) {
+			return NO_BOUNDARIES;
+		}
+
+		final double[] movement = new double[minutes];
+		for (int i = 0; i < size; i++) {
+			final double y = source.getY(i);
+			if (Double.isNaN(y)) {
+				continue;
+			}
+			final int minute = (int) Math.floor((source.getX(i) - startTime) / BIN_MILLIS);
+			if (minute >= 0 && minute < minutes && y > movement[minute]) {
+				movement[minute] = y;
+			}
+		}
+
+		final double[] correlation = new double[minutes];
+		Fft.autocorrelate(movement, minutes, correlation);
+		int period = 0;
+		double best = MIN_CORRELATION;
+		final int maxLag = Math.min(MAX_CYCLE_MINUTES, minutes - 1);
+		for (int lag = MIN_CYCLE_MINUTES; lag <= maxLag; lag++) {
+			if (correlation[lag] > best) {
+				best = correlation[lag];
+				period = lag;
+			}
+		}
+		if (period == 0) {
+			return NO_BOUNDARIES;
+		}
+		mCycleMinutes = period;
+
+		final double[] smoothed = smooth(movement, minutes, Math.max(1, period / 6));
+		final int slack = period / 3;
+		final long[] boundaries = new long[minutes / (period - slack) + 1];
+		int count = 0;
+		int previous = 0;
+		while (previous + period - slack < minutes) {
+			final int from = previous + period - slack;
+			final int to = Math.min(minutes - 1, previous + period + slack);
+			int peak = from;
+			for (int i = from + 1; i <= to; i++) {
+				if (smoothed[i] > smoothed[peak]) {
+					peak = i;
+				}
+			}
+			boundaries[count++] = startTime + peak * BIN_MILLIS;
+			previous = peak;
+		}
+
+		final long[] result = new long[count];
+		System.arraycopy(boundaries, 0, result, 0, count);
+		return result;
+	}
+
+	/**
+	 * The cycle length found by the last {@link #detect}, or 0 if there was
+	 * no rhythm.
+	 */
+	public int getCycleMinutes() {
+		return mCycleMinutes;
+	}
+
+	/**
+	 * Centered moving average with the given half width, cut short at the
+	 * ends.
+	 */
+	private static double[] smooth(final double[] values, final int count, final int halfWidth) {
+		final double[] smoothed = new double[count];
+		smooth(values, count, halfWidth, smoothed);
+		return smoothed;
+	}
+
+	static void smooth(final double[] values, final int count, final int halfWidth,
+			final double[] smoothed) {
+		double sum = 0;
+		int start = 0;
+		int end = 0; // exclusive
+		for (int i = 0; i < count; i++) {
+			while (end < count && end <= i + halfWidth) {
+				sum += values[end++];
+			}
+			while (start < i - halfWidth) {
+				sum -= values[start++];
+			}
+			smoothed[i] = sum / (end - start);
+		}
+	}
+}
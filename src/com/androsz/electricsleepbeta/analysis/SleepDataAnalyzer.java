@@ -0,0 +1,135 @@
+package com.androsz.electricsleepbeta.analysis;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.androsz.electricsleepbeta.util.PointD;
+
+/**
+ * Produces what a saved session needs from a night's points: the points to
+ * store, the number of spikes and the time the sleeper fell asleep.
+ *
+ * The night is downsampled to at most maxPoints points in one pass over the
+ * source, which may be a memory-mapped journal, so heap use is bounded by
+ * maxPoints however long the night was. A stored point at or above the alarm
+ * level is a spike, and the sleeper fell asleep at the stored point before the
+ * fifth consecutive quiet one.
+ */
+public final class SleepDataAnalyzer {
+
+	private static final int QUIET_POINTS_TO_FALL_ASLEEP = 5;
+
+	private final float mAlarm;
+	private final int mMaxPoints;
+
+	private final ArrayList<PointD> mData;
+	private final double[] mX;
+	private final double[] mY;
+	private long mStartTime;
+	private long mEndTime;
+	private double mMin;
+	private int mEpochCount;
+	private int mSpikes;
+	private long mTimeOfFirstSleep;
+
+	public SleepDataAnalyzer(final float alarm, final int maxPoints) {
+		mAlarm = alarm;
+		mMaxPoints = maxPoints;
+		mData = new ArrayList<PointD>(maxPoints);
+		mX = new double[maxPoints];
+		mY = new double[maxPoints];
+	}
+
+	/**
+	 * Downsample source with downsampler and analyze the stored points.
+	 */
+	public void analyze(final XYSource source, final Downsampler downsampler) {
+		mData.clear();
+		mEpochCount = 0;
+		mSpikes = 0;
+		mTimeOfFirstSleep = 0;
+
+		final double[] x = mX;
+		final double[] y = mY;
+		final int count = downsampler.downsample(source, mMaxPoints, x, y);
+		if (count == 0) {
+			mStartTime = 0;
+			mEndTime = 0;
+			mMin = 0;
+			return;
+		}
+
+		// a bucket is stored at its first x, so the night's end comes from
+		// the source.
+		mStartTime = Math.round(x[0]);
+		int last = source.size() - 1;
+		while (Double.isNaN(source.getY(last))) {
+			last--;
+		}
+		mEndTime = Math.round(source.getX(last));
+		mMin = Double.POSITIVE_INFINITY;
+		for (int i = 0; i <= last; i++) {
+			final double value = source.getY(i);
+			if (Double.isNaN(value)) {
+				continue;
+			}
+			mEpochCount++;
+			if (value < mMin) {
+				mMin = value;
+			}
+		}
+
+		int consecutiveQuiet = 0;
+		for (int i = 0; i < count; i++) {
+			if (y[i] < mAlarm) {
+				if (mTimeOfFirstSleep == 0 && ++consecutiveQuiet >= QUIET_POINTS_TO_FALL_ASLEEP
+						&& i > 0) {
+					mTimeOfFirstSleep = Math.round(x[i - 1]);
+				}
+			} else {
+				consecutiveQuiet = 0;
+				mSpikes++;
+			}
+			mData.add(new PointD(x[i], y[i]));
+		}
+	}
+
+	public List<PointD> getData() {
+		return mData;
+	}
+
+	public long getEndTime() {
+		return mEndTime;
+	}
+
+	public int getPointCount() {
+		return mData.size();
+	}
+
+	/**
+	 * The lowest value in the source, or 0 if it had no points.
+	 */
+	public double getMin() {
+		return mMin;
+	}
+
+	public int getSpikes() {
+		return mSpikes;
+	}
+
+	public long getStartTime() {
+		return mStartTime;
+	}
+
+	/**
+	 * The result of the last {@link #analyze}.
+	 */
+	public SleepSummary getSummary() {
+		return new SleepSummary(mStartTime, mEndTime, mMin, mSpikes, mTimeOfFirstSleep, mX, mY,
+				mData.size(), mEpochCount);
+	}
+
+	public long getTimeOfFirstSleep() {
+		return mTimeOfFirstSleep;
+	}
+}
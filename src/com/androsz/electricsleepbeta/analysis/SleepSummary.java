@@ -0,0 +1,94 @@
+package com.androsz.electricsleepbeta.analysis;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.androsz.electricsleepbeta.util.PointD;
+
+/**
+ * Everything a saved session is made of apart from what the user enters: the
+ * stored points, the night's span, its lowest epoch value, the number of
+ * spikes and the time the sleeper fell asleep. Immutable.
+ */
+public final class SleepSummary implements Serializable {
+
+	private static final long serialVersionUID = 3270861392473418501L;
+
+	private final long mStartTime;
+	private final long mEndTime;
+	private final double mMin;
+	private final int mSpikes;
+	private final long mTimeOfFirstSleep;
+	private final double[] mX;
+	private final double[] mY;
+	private final int mEpochCount;
+
+	/**
+	 * x and y are copied; only their first count points are kept. epochCount
+	 * is the number of epochs they were reduced from.
+	 */
+	public SleepSummary(final long startTime, final long endTime, final double min,
+			final int spikes, final long timeOfFirstSleep, final double[] x, final double[] y,
+			final int count, final int epochCount) {
+		mStartTime = startTime;
+		mEndTime = endTime;
+		mMin = min;
+		mSpikes = spikes;
+		mTimeOfFirstSleep = timeOfFirstSleep;
+		mX = new double[count];
+		mY = new double[count];
+		System.arraycopy(x, 0, mX, 0, count);
+		System.arraycopy(y, 0, mY, 0, count);
+		mEpochCount = epochCount;
+	}
+
+	/**
+	 * A new list of the stored points.
+	 */
+	public List<PointD> getData() {
+		final ArrayList<PointD> data = new ArrayList<PointD>(mX.length);
+		for (int i = 0; i < mX.length; i++) {
+			data.add(new PointD(mX[i], mY[i]));
+		}
+		return data;
+	}
+
+	public long getDuration() {
+		return mEndTime - mStartTime;
+	}
+
+	public long getEndTime() {
+		return mEndTime;
+	}
+
+	/**
+	 * The lowest epoch value, or 0 if there were none.
+	 */
+	public double getMin() {
+		return mMin;
+	}
+
+	/**
+	 * The number of epochs summarized, gaps not included.
+	 */
+	public int getEpochCount() {
+		return mEpochCount;
+	}
+
+	public int getPointCount() {
+		return mX.length;
+	}
+
+	public int getSpikes() {
+		return mSpikes;
+	}
+
+	public long getStartTime() {
+		return mStartTime;
+	}
+
+	public long getTimeOfFirstSleep() {
+		return mTimeOfFirstSleep;
+	}
+}
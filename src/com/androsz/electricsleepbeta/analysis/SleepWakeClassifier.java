@@ -0,0 +1,23 @@
+package com.androsz.electricsleepbeta.analysis;
+
+/**
+ * Labels each epoch of an actigraphy series as sleep or wake.
+ */
+public interface SleepWakeClassifier {
+	byte WAKE = 0;
+	byte SLEEP = 1;
+
+	/** For epochs without any data; never produced by a classifier itself. */
+	byte UNKNOWN = -1;
+
+	/**
+	 * Label the first count one-minute activity counts into out.
+	 */
+	void classify(float[] counts, int count, byte[] out);
+
+	/**
+	 * The smallest count that labels a minute wake when the minutes around it
+	 * are still.
+	 */
+	float getWakeCount();
+}
@@ -0,0 +1,79 @@
+package com.androsz.electricsleepbeta.analysis;
+
+/**
+ * Scores a night into one-minute sleep/wake labels.
+ *
+ * The published classifiers expect one-minute activity counts from a
+ * dedicated actigraph, so the epochs are first binned into minutes by their
+ * x and the mean activity of each minute is scaled. The calibration level is
+ * the movement the sleeper set as waking them, so a minute that moved at it
+ * the whole time is scaled to the classifier's
+ * {@link SleepWakeClassifier#getWakeCount() wake count}: even among still
+ * minutes it is wake, and anything quieter needs restless neighbours to be.
+ * Minutes without any epoch, such as those in a gap, are labelled
+ * {@link SleepWakeClassifier#UNKNOWN}.
+ */
+public final class SleepWakeScorer {
+
+	/** Length of one labelled epoch. */
+	public static final long EPOCH_MILLIS = 60 * 1000;
+
+	private final SleepWakeClassifier mClassifier;
+	private final float mScale;
+
+	public SleepWakeScorer(final SleepWakeClassifier classifier, final float calibrationLevel) {
+		mClassifier = classifier;
+		mScale = calibrationLevel > 0 ? classifier.getWakeCount() / calibrationLevel : 0;
+	}
+
+	/**
+	 * Label every minute from startTime to the last epoch of source.
+	 *
+	 * @return one label per minute, or an empty array if source has no epoch
+	 *         at or after startTime.
+	 */
+	public byte[] score(final ActivitySource source, final long startTime) {
+		final int size = source.size();
+		int minutes = 0;
+		for (int i = size - 1; i >= 0; i--) {
+			if (!Double.isNaN(source.getY(i))) {
+				minutes = getMinute(source.getX(i), startTime) + 1;
+				break;
+			}
+		}
+		if (minutes <= 0) {
+			return new byte[0];
+		}
+
+		final float[] counts = new float[minutes];
+		final int[] epochs = new int[minutes];
+		for (int i = 0; i < size; i++) {
+			if (Double.isNaN(source.getY(i))) {
+				continue;
+			}
+			final int minute = getMinute(source.getX(i), startTime);
+			if (minute >= 0 && minute < minutes) {
+				counts[minute] += source.getActivity(i);
+				epochs[minute]++;
+			}
+		}
+		for (int i = 0; i < minutes; i++) {
+			if (epochs[i] > 0) {
+				counts[i] = counts[i] / epochs[i] * mScale;
+			}
+		}
+
+		final byte[] labels = new byte[minutes];
+		mClassifier.classify(counts, minutes, labels);
+		for (int i = 0; i < minutes; i++) {
+			if (epochs[i] == 0) {
+				labels[i] = SleepWakeClassifier.UNKNOWN;
+			}
+		}
+		return labels;
+	}
+
+	private static int getMinute(final double x, final long startTime) {
+		return (int) Math.floor((x - startTime) / EPOCH_MILLIS);
+	}
+}
@@ -0,0 +1,13 @@
+package com.androsz.electricsleepbeta.analysis;
+
+/**
+ * Random access, read-only sequence of x/y points in ascending x. A point
+ * whose y is NaN marks a gap and carries no value.
+ */
+public interface XYSource {
+	int size();
+
+	double getX(int index);
+
+	double getY(int index);
+}
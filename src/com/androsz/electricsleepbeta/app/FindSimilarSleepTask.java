@@ -0,0 +1,104 @@
+package com.androsz.electricsleepbeta.app;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.app.AlertDialog;
+import android.app.ProgressDialog;
+import android.content.ContentUris;
+import android.content.Context;
+import android.content.DialogInterface;
+import android.content.Intent;
+import android.database.Cursor;
+import android.os.AsyncTask;
+import android.widget.Toast;
+
+import com.androsz.electricsleepbeta.R;
+import com.androsz.electricsleepbeta.db.SleepFingerprint;
+import com.androsz.electricsleepbeta.db.SleepSession;
+
+/**
+ * Finds the nights whose movement was most like a sleep record's and offers to
+ * review one of them.
+ */
+public class FindSimilarSleepTask extends AsyncTask<Long, Void, List<SleepSession>> {
+
+    private static final int MAX_SIMILAR_NIGHTS = 10;
+
+    private final Context context;
+    private final ProgressDialog progress;
+
+    FindSimilarSleepTask(Context context) {
+        this.context = context;
+        this.progress = new ProgressDialog(context);
+    }
+
+    @Override
+    protected List<SleepSession> doInBackground(final Long... params) {
+        final List<Long> ids = SleepFingerprint.findSimilar(context.getContentResolver(),
+                params[0], MAX_SIMILAR_NIGHTS);
+        final List<SleepSession> similar = new ArrayList<SleepSession>(ids.size());
+        for (final Long id : ids) {
+            final Cursor cursor = context.getContentResolver().query(
+                    ContentUris.withAppendedId(SleepSession.CONTENT_URI, id), null, null,
+                    null, null);
+            if (cursor == null) {
+                continue;
+            }
+            try {
+                if (cursor.moveToFirst()) {
+                    similar.add(new SleepSession(cursor));
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        return similar;
+    }
+
+    @Override
+    protected void onPostExecute(final List<SleepSession> similar) {
+        if (this.progress.isShowing()) {
+            this.progress.dismiss();
+        }
+
+        if (similar.isEmpty()) {
+            Toast.makeText(this.context,
+                    this.context.getString(R.string.no_similar_nights),
+                    Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        final String[] titles = new String[similar.size()];
+        for (int i = 0; i < titles.length; i++) {
+            titles[i] = similar.get(i).getTitle(this.context);
+        }
+        new AlertDialog.Builder(this.context)
+                .setTitle(this.context.getString(R.string.similar_nights))
+                .setItems(titles, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(final DialogInterface dialog, final int which) {
+                        final Intent reviewSleepIntent = new Intent(context,
+                                ReviewSleepActivity.class);
+                        reviewSleepIntent.setData(ContentUris.withAppendedId(
+                                SleepSession.CONTENT_URI, similar.get(which).getId()));
+                        context.startActivity(reviewSleepIntent);
+                    }
+                }).show();
+    }
+
+    @Override
+    protected void onPreExecute() {
+        this.progress.setMessage(this.context
+                .getString(R.string.finding_similar_nights));
+        this.progress.show();
+    }
+
+    @Override
+    protected void onCancelled() {
+        super.onCancelled();
+        if (this.progress.isShowing()) {
+            this.progress.dismiss();
+        }
+    }
+}
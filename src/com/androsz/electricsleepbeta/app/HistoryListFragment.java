@@ -139,10 +139,9 @@ public class HistoryListFragment extends AnalyticFragment implements
             if (julianDay == 0) {
                 return null;
             }
-            return new CursorLoader(getActivity(), SleepSession.CONTENT_URI,
-                    null, SleepSession.START_JULIAN_DAY + " =? ",
-                    new String[] { Integer.toString(julianDay) },
-                    SleepSession.SORT_ORDER_LIMIT_60);
+            return new CursorLoader(getActivity(),
+                    SleepSession.buildJulianDayRangeUri(julianDay, julianDay),
+                    null, null, null, SleepSession.SORT_ORDER_LIMIT_60);
         }
 
         return null;
@@ -45,6 +45,17 @@ public class HistoryMonthFragment extends AnalyticFragment implements
     private static final String TAG = HistoryMonthFragment.class
             .getSimpleName();
 
+    private static final String ARG_FIRST_JULIAN_DAY = "firstJulianDay";
+    private static final String ARG_LAST_JULIAN_DAY = "lastJulianDay";
+
+    /**
+     * Only what {@link SleepSession#getStartEndTimestamps} reads, so the
+     * start julian day index answers the query on its own.
+     */
+    private static final String[] PROJECTION = new String[] {
+            SleepSession._ID, SleepSession.START_TIMESTAMP,
+            SleepSession.START_JULIAN_DAY, SleepSession.END_TIMESTAMP };
+
     private final class IndicatorPageChangeListener implements
             OnPageChangeListener {
         private final TitlePageIndicator indicator;
@@ -108,6 +119,11 @@ public class HistoryMonthFragment extends AnalyticFragment implements
                 // scroll up/down
                 indicator.setCurrentItem(1, false);
                 eventsChanged(focusedPage);
+                if (focusedPage != 1) {
+                    ((HostActivity) a).getSupportLoaderManager().restartLoader(0,
+                            getLoaderArgs(centerMonth.getTime()),
+                            HistoryMonthFragment.this);
+                }
             }
         }
 
@@ -336,10 +352,33 @@ public class HistoryMonthFragment extends AnalyticFragment implements
         a.getContentResolver().registerContentObserver(
                 SleepSession.CONTENT_URI, true, sessionsObserver);
 
-        a.getSupportLoaderManager().initLoader(0, null,
+        final Time now = new Time();
+        now.setToNow();
+        a.getSupportLoaderManager().initLoader(0, getLoaderArgs(now),
                 HistoryMonthFragment.this);
     }
 
+    /**
+     * The julian days of the three months around centerMonth, plus the week
+     * on either side that a month view shows from its neighbours.
+     */
+    private static Bundle getLoaderArgs(Time centerMonth) {
+        final Time time = new Time(centerMonth);
+        time.monthDay = 1;
+        time.month--;
+        time.normalize(true);
+        final int first = Time.getJulianDay(time.toMillis(true), time.gmtoff) - 7;
+
+        time.set(1, centerMonth.month + 2, centerMonth.year);
+        time.normalize(true);
+        final int last = Time.getJulianDay(time.toMillis(true), time.gmtoff) - 1 + 7;
+
+        final Bundle args = new Bundle();
+        args.putInt(ARG_FIRST_JULIAN_DAY, first);
+        args.putInt(ARG_LAST_JULIAN_DAY, last);
+        return args;
+    }
+
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container,
                              Bundle savedInstanceState) {
@@ -375,9 +414,10 @@ public class HistoryMonthFragment extends AnalyticFragment implements
     @Override
     public Loader<Cursor> onCreateLoader(int id, Bundle args) {
         return new CursorLoader(getActivity(),
-				SleepSession.CONTENT_URI,
-				null, null, null,
-				null);
+                SleepSession.buildJulianDayRangeUri(
+                        args.getInt(ARG_FIRST_JULIAN_DAY),
+                        args.getInt(ARG_LAST_JULIAN_DAY)),
+                PROJECTION, null, null, null);
     }
 
     @Override
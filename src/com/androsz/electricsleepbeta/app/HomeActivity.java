@@ -22,6 +22,7 @@ import com.androsz.electricsleepbeta.R;
 import com.androsz.electricsleepbeta.alarmclock.AlarmClock;
 import com.androsz.electricsleepbeta.content.StartSleepReceiver;
 import com.androsz.electricsleepbeta.db.SleepSession;
+import com.androsz.electricsleepbeta.db.SleepSessionSummary;
 import com.androsz.electricsleepbeta.util.MathUtils;
 import com.androsz.electricsleepbeta.widget.SleepChart;
 
@@ -170,11 +171,12 @@ public class HomeActivity extends HostActivity implements
 				protected Void doInBackground(Void... params) {
 					int count = 0;
 					int fellAsleepCount = 0;
+					final SleepSession.Columns columns = new SleepSession.Columns(cursor);
 					do {
 						count++;
-						SleepSession sleepRecord = null;
+						SleepSessionSummary sleepRecord = null;
 						try {
-							sleepRecord = new SleepSession(cursor);
+							sleepRecord = new SleepSessionSummary(cursor, columns);
 						} catch (final CursorIndexOutOfBoundsException cioobe) {
 							// there are no records!
 							return null;
@@ -0,0 +1,103 @@
+package com.androsz.electricsleepbeta.app;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import android.app.IntentService;
+import android.content.Context;
+import android.content.Intent;
+import android.content.OperationApplicationException;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.os.Build.VERSION;
+import android.os.RemoteException;
+
+import com.androsz.electricsleepbeta.content.HistoryReanalyzer;
+import com.google.android.apps.analytics.GoogleAnalyticsTracker;
+
+/**
+ * Rescores the sleep history against a new calibration level in the
+ * background with {@link HistoryReanalyzer}. The rescore runs unattended; the
+ * history simply shows the new scores as pages are written.
+ *
+ * Progress is remembered, so a job cut short by the process dying carries on
+ * from the last page written when it is redelivered or started again for the
+ * same level. Starting the service with {@link #ACTION_CANCEL} stops every job
+ * queued before it after its current page, which the calibration wizard does
+ * before rescoring against a newer level.
+ */
+public class ReanalyzeHistoryService extends IntentService {
+
+	private static final String TAG = ReanalyzeHistoryService.class.getSimpleName();
+
+	public static final String ACTION_CANCEL = "com.androsz.electricsleepbeta.CANCEL_REANALYZE_HISTORY";
+
+	public static final String EXTRA_CALIBRATION_LEVEL = "calibrationLevel";
+
+	private static final String PREFERENCES = "reanalyzeHistory";
+	private static final String KEY_CALIBRATION_LEVEL = "calibrationLevel";
+	private static final String KEY_LAST_ID = "lastId";
+
+	private final AtomicBoolean mCancelled = new AtomicBoolean(false);
+
+	public ReanalyzeHistoryService() {
+		super(TAG);
+		setIntentRedelivery(true);
+	}
+
+	@Override
+	public int onStartCommand(final Intent intent, final int flags, final int startId) {
+		// seen right away; the cancel intent itself is queued behind the jobs
+		// it cancels.
+		if (intent != null && ACTION_CANCEL.equals(intent.getAction())) {
+			mCancelled.set(true);
+		}
+		return super.onStartCommand(intent, flags, startId);
+	}
+
+	@Override
+	protected void onHandleIntent(final Intent intent) {
+		if (ACTION_CANCEL.equals(intent.getAction())) {
+			mCancelled.set(false);
+			return;
+		}
+
+		final float calibrationLevel = intent.getFloatExtra(EXTRA_CALIBRATION_LEVEL,
+				SettingsActivity.DEFAULT_ALARM_SENSITIVITY);
+		final SharedPreferences prefs = getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+		long afterId = 0;
+		if (prefs.contains(KEY_LAST_ID)
+				&& prefs.getFloat(KEY_CALIBRATION_LEVEL, Float.NaN) == calibrationLevel) {
+			afterId = prefs.getLong(KEY_LAST_ID, 0);
+			Log.d(TAG, "Resuming history reanalysis after session " + afterId);
+		}
+		prefs.edit().putFloat(KEY_CALIBRATION_LEVEL, calibrationLevel)
+				.putLong(KEY_LAST_ID, afterId).commit();
+
+		try {
+			new HistoryReanalyzer(getContentResolver(), calibrationLevel).run(afterId,
+					mCancelled, new HistoryReanalyzer.ProgressListener() {
+						@Override
+						public void onProgress(final int done, final int total, final long lastId) {
+							prefs.edit().putLong(KEY_LAST_ID, lastId).commit();
+							Log.d(TAG, "Reanalyzed " + done + " of " + total + " sessions.");
+						}
+					});
+		} catch (final RemoteException e) {
+			trackFailure(e);
+			return;
+		} catch (final OperationApplicationException e) {
+			trackFailure(e);
+			return;
+		}
+
+		if (!mCancelled.get()) {
+			prefs.edit().clear().commit();
+		}
+	}
+
+	private void trackFailure(final Exception e) {
+		// the saved progress is kept, so starting again resumes.
+		GoogleAnalyticsTracker.getInstance().trackEvent(Integer.toString(VERSION.SDK_INT),
+				Build.MODEL, "reanalyzeHistoryFail : " + e.getMessage(), 0);
+	}
+}
@@ -3,11 +3,9 @@ package com.androsz.electricsleepbeta.app;
 import android.app.AlertDialog;
 import android.content.ContentUris;
 import android.content.DialogInterface;
-import android.database.Cursor;
 import android.net.Uri;
 import android.os.Bundle;
 import android.support.v4.app.LoaderManager;
-import android.support.v4.content.CursorLoader;
 import android.support.v4.content.Loader;
 
 import com.actionbarsherlock.view.MenuItem;
@@ -15,7 +13,7 @@ import com.androsz.electricsleepbeta.R;
 import com.androsz.electricsleepbeta.db.SleepSession;
 
 public class ReviewSleepActivity extends HostActivity implements
-        LoaderManager.LoaderCallbacks<Cursor> {
+        LoaderManager.LoaderCallbacks<SleepSession> {
 
     private static final String TAG = ReviewSleepActivity.class.getSimpleName();
 
@@ -45,29 +43,29 @@ public class ReviewSleepActivity extends HostActivity implements
     }
 
     @Override
-    public Loader<Cursor> onCreateLoader(int id, Bundle args) {
+    public Loader<SleepSession> onCreateLoader(int id, Bundle args) {
         final Uri uri = getIntent().getData();
         Log.d(TAG, "Creating loader: " + uri);
-        return new CursorLoader(this, uri, null, null, null, null);
+        // the data and pyramid are fetched and decoded by the loader, off
+        // the UI thread.
+        return new SleepSessionLoader(this, uri);
     }
 
     @Override
-    public void onLoaderReset(Loader<Cursor> loader) {
+    public void onLoaderReset(Loader<SleepSession> loader) {
         Log.d(TAG, "Loader reset.");
         loader.stopLoading();
         finish();
     }
 
     @Override
-    public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
+    public void onLoadFinished(Loader<SleepSession> loader, SleepSession data) {
         Log.d(TAG, "Load finished.");
-        if (data.moveToLast()) {
-            // WARNING - there is assumption here that the cursor's first column
-            // is its primary key.
+        if (data != null) {
             getIntent().setData(
                     ContentUris.withAppendedId(SleepSession.CONTENT_URI,
-                            data.getLong(0)));
-            mSleepRecord = new SleepSession(data);
+                            data.getId()));
+            mSleepRecord = data;
             mSleepFragment.setSleepRecord(mSleepRecord);
         } else {
             finish();
@@ -107,6 +105,9 @@ public class ReviewSleepActivity extends HostActivity implements
                             });
             dialog.show();
             break;
+        case R.id.menu_item_similar_sleep_records:
+            new FindSimilarSleepTask(this).execute(ContentUris.parseId(getIntent().getData()));
+            break;
         }
         return super.onOptionsItemSelected(item);
     }
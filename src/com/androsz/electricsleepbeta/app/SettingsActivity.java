@@ -68,6 +68,9 @@ public class SettingsActivity extends HostPreferenceActivity {
 
 	public static final String KEY_VOLUME_BEHAVIOR = "volume_button_setting";
 
+	/** The pref_sleep_wake_scorer value that picks Sadeh over Cole-Kripke. */
+	public static final String SLEEP_WAKE_SCORER_SADEH = "sadeh";
+
 	// name of the preferences file that holds main preferences
 	// this is actually what android uses as default..
 	public static String PREFERENCES = "com.androsz.electricsleepbeta_preferences";
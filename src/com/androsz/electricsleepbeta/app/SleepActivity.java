@@ -25,6 +25,8 @@ import com.androsz.electricsleepbeta.R;
 import com.androsz.electricsleepbeta.alarmclock.Alarm;
 import com.androsz.electricsleepbeta.alarmclock.AlarmClock;
 import com.androsz.electricsleepbeta.alarmclock.Alarms;
+import com.androsz.electricsleepbeta.analysis.SleepSummary;
+import com.androsz.electricsleepbeta.db.SleepSession;
 import com.androsz.electricsleepbeta.widget.SleepChart;
 
 public class SleepActivity extends HostActivity {
@@ -92,8 +94,6 @@ public class SleepActivity extends HostActivity {
 
 	public static final String SYNC_CHART = "com.androsz.electricsleepbeta.SYNC_CHART";
 
-	public static final String UPDATE_CHART = "com.androsz.electricsleepbeta.UPDATE_CHART";
-
 	private final BroadcastReceiver batteryChangedReceiver = new BroadcastReceiver() {
 		@Override
 		public void onReceive(final Context context, final Intent intent) {
@@ -104,6 +104,8 @@ public class SleepActivity extends HostActivity {
 
 	private SleepMonitoringService mMonitoringService = null;
 
+	private SleepMonitoringService.ServiceBinder mServiceBinder = null;
+
 	DimScreenTask dimScreenTask;
 
 	private SleepChart sleepChart;
@@ -122,13 +124,13 @@ public class SleepActivity extends HostActivity {
 	private TextView buttonSleepPluggedIn;
 	private TextView textAlarmStatus;
 	private TextView textAlarmStatusSub;
+	private TextView textSleepSummary;
 
-	private final BroadcastReceiver updateChartReceiver = new BroadcastReceiver() {
+	private final SleepMonitoringService.LiveUpdateListener liveUpdateListener = new SleepMonitoringService.LiveUpdateListener() {
 		@Override
-		public void onReceive(final Context context, final Intent intent) {
-			sleepChart.sync(intent.getDoubleExtra(
-					SleepMonitoringService.EXTRA_X, 0), intent.getDoubleExtra(
-					SleepMonitoringService.EXTRA_Y, 0));
+		public void onPointsAdded(final double[] x, final double[] y, final int count) {
+			sleepChart.sync(x, y, count);
+			updateSleepSummary();
 		}
 	};
 
@@ -202,9 +204,12 @@ public class SleepActivity extends HostActivity {
 	@Override
 	protected void onPause() {
 		unregisterReceiver(airplaneModeChangedReceiver);
-		unregisterReceiver(updateChartReceiver);
 		unregisterReceiver(batteryChangedReceiver);
 		cancelDimScreenTask();
+		if (mServiceBinder != null) {
+			mServiceBinder.removeLiveUpdateListener(liveUpdateListener);
+			mServiceBinder = null;
+		}
 		if (mServiceBound.compareAndSet(true, false)) {
 			unbindService(serviceConnection);
 		}
@@ -260,12 +265,12 @@ public class SleepActivity extends HostActivity {
 		textAlarmStatusSub = (TextView) findViewById(R.id.text_alarm_status_sub);
 		buttonSleepDim = (TextView) findViewById(R.id.text_sleep_dim);
 		buttonSleepPluggedIn = (TextView) findViewById(R.id.text_sleep_plugged_in);
+		textSleepSummary = (TextView) findViewById(R.id.text_sleep_summary);
 
 		registerReceiver(airplaneModeChangedReceiver, new IntentFilter(
 				Intent.ACTION_AIRPLANE_MODE_CHANGED));
 		registerReceiver(batteryChangedReceiver, new IntentFilter(
 				Intent.ACTION_BATTERY_CHANGED));
-		registerReceiver(updateChartReceiver, new IntentFilter(UPDATE_CHART));
 
 		if (mServiceBound.compareAndSet(false, true)) {
 			bindService(new Intent(this, SleepMonitoringService.class),
@@ -274,15 +279,41 @@ public class SleepActivity extends HostActivity {
 		super.onResume();
 	}
 
+	/**
+	 * Show the spikes and time to fall asleep of the night so far, as they
+	 * would be saved. Not every layout has room for them.
+	 */
+	private void updateSleepSummary() {
+		final SleepMonitoringService service = mMonitoringService;
+		if (textSleepSummary == null || service == null) {
+			return;
+		}
+		final SleepSummary summary = service.getSummary();
+		if (summary == null || summary.getPointCount() == 0) {
+			return;
+		}
+		final CharSequence timeToFallAsleep = summary.getTimeOfFirstSleep() > summary
+				.getStartTime() ? SleepSession.getTimespanText(summary.getTimeOfFirstSleep()
+				- summary.getStartTime(), getResources()) : "----";
+		textSleepSummary.setText(getString(R.string.live_sleep_summary, summary.getSpikes(),
+				timeToFallAsleep));
+		textSleepSummary.setVisibility(View.VISIBLE);
+	}
+
 	private ServiceConnection serviceConnection = new ServiceConnection() {
 
 		public void onServiceConnected(ComponentName className, IBinder iBinder) {
 			SleepMonitoringService.ServiceBinder binder = (SleepMonitoringService.ServiceBinder) iBinder;
 			mMonitoringService = binder.getService();
+			mServiceBinder = binder;
 
 			sleepChart.setCalibrationLevelAndRedraw(mMonitoringService
 					.getAlarmTriggerSensitivity());
+			// listen first so nothing recorded during the sync is missed;
+			// repeated points are dropped by the chart.
+			binder.addLiveUpdateListener(liveUpdateListener);
 			sleepChart.sync(mMonitoringService.getData());
+			updateSleepSummary();
 			final boolean useAlarm = mMonitoringService.getUseAlarm();
 			final boolean forceScreenOn = mMonitoringService.getForceScreenOn();
 
@@ -369,6 +400,7 @@ public class SleepActivity extends HostActivity {
 
 		public void onServiceDisconnected(ComponentName className) {
 			mMonitoringService = null;
+			mServiceBinder = null;
 		}
 	};
 }
@@ -1,18 +1,19 @@
 package com.androsz.electricsleepbeta.app;
 
-import java.io.FileOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.text.DateFormat;
-import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.Date;
-import java.util.List;
 import java.util.Locale;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
-
-import org.achartengine.model.PointD;
+import java.util.concurrent.locks.LockSupport;
 
 import android.app.Notification;
 import android.app.NotificationManager;
@@ -23,70 +24,221 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.SharedPreferences;
+import android.database.ContentObserver;
 import android.hardware.Sensor;
 import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
 import android.media.AudioManager;
+import android.media.RingtoneManager;
+import android.net.Uri;
 import android.os.AsyncTask;
 import android.os.Binder;
 import android.os.Build;
 import android.os.Build.VERSION;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
+import android.os.Looper;
 import android.os.PowerManager;
 import android.provider.Settings;
 
 import com.androsz.electricsleepbeta.R;
 import com.androsz.electricsleepbeta.alarmclock.Alarm;
 import com.androsz.electricsleepbeta.alarmclock.Alarms;
+import com.androsz.electricsleepbeta.analysis.EpochClock;
+import com.androsz.electricsleepbeta.analysis.EpochFeatureAggregator;
+import com.androsz.electricsleepbeta.analysis.EpochFeatures;
+import com.androsz.electricsleepbeta.analysis.IncrementalSleepAnalyzer;
+import com.androsz.electricsleepbeta.analysis.LightSleepPredictor;
+import com.androsz.electricsleepbeta.analysis.MovementFeatureExtractor;
+import com.androsz.electricsleepbeta.analysis.SensorRateGovernor;
+import com.androsz.electricsleepbeta.analysis.SleepSummary;
 import com.androsz.electricsleepbeta.app.wizard.CalibrationWizardActivity;
 import com.androsz.electricsleepbeta.content.StartSleepReceiver;
+import com.androsz.electricsleepbeta.util.SampleRingBuffer;
+import com.androsz.electricsleepbeta.util.SleepDataJournal;
 import com.androsz.electricsleepbeta.util.WakeLockManager;
+import com.androsz.electricsleepbeta.util.XYRingBuffer;
 import com.google.android.apps.analytics.GoogleAnalyticsTracker;
 
 public class SleepMonitoringService extends Service implements SensorEventListener {
 
     private static final String TAG = SleepMonitoringService.class.getSimpleName();
 
-	private final class UpdateTimerTask extends TimerTask {
+	/**
+	 * Receives live points from a running session. Register through
+	 * {@link ServiceBinder#addLiveUpdateListener(LiveUpdateListener)}.
+	 */
+	public interface LiveUpdateListener {
+		/**
+		 * Called on the main thread with the points recorded since the last
+		 * call, oldest first. Points that pile up while the main thread is
+		 * busy are delivered together. The arrays are reused; copy anything
+		 * that must outlive the call.
+		 */
+		void onPointsAdded(double[] x, double[] y, int count);
+	}
+
+	/** Delivers {@link #pendingLivePoints} to the live update listeners. */
+	private final class LiveUpdateDispatcher implements Runnable {
+		private final double[] mX = new double[MAX_POINTS_IN_A_GRAPH];
+		private final double[] mY = new double[MAX_POINTS_IN_A_GRAPH];
+
 		@Override
 		public void run() {
-			final long currentTime = System.currentTimeMillis();
+			liveUpdatePosted.set(false);
+			final int count;
+			synchronized (pendingLivePoints) {
+				count = pendingLivePoints.size();
+				for (int i = 0; i < count; i++) {
+					mX[i] = pendingLivePoints.getX(i);
+					mY[i] = pendingLivePoints.getY(i);
+				}
+				pendingLivePoints.clear();
+			}
+			if (count == 0) {
+				return;
+			}
+			for (final LiveUpdateListener listener : liveUpdateListeners) {
+				listener.onPointsAdded(mX, mY, count);
+			}
+		}
+	}
+
+	/**
+	 * Long-lived thread that drains {@link #sensorSamples} in order, runs the
+	 * movement filter and closes epochs on sensor time. It is the only thread
+	 * that touches {@link #movementExtractor}, so no locking is needed. Closed
+	 * epochs are handed to the {@link #recorder}; nothing here blocks, so the
+	 * ring cannot overflow behind a slow disk.
+	 */
+	private final class SensorConsumerThread extends Thread implements
+			SampleRingBuffer.SampleHandler, EpochClock.Listener {
+
+		private final EpochClock mClock;
+
+		private volatile boolean mQuit = false;
 
-			final double x = currentTime;
-			final double y = java.lang.Math
-					.min(SettingsActivity.MAX_ALARM_SENSITIVITY, maxNetForce);
+		SensorConsumerThread(final long epochMillis) {
+			super("SensorConsumer");
+			mClock = new EpochClock(epochMillis);
+		}
+
+		@Override
+		public void onSample(final float x, final float y, final float z,
+				final long timestampNanos) {
+			if (!movementExtractor.isWarmedUp()) {
+				movementExtractor.addSample(x, y, z, timestampNanos);
+				return;
+			}
+
+			// closes the previous epoch(s) before this sample is counted; the
+			// first warmed up sample starts the clock.
+			mClock.advance(timestampNanos, this);
+			final float netForce = movementExtractor.addSample(x, y, z, timestampNanos);
+			if (governSensorRate && rateGovernor.onSample(netForce, timestampNanos)) {
+				requestSensorDelay(sensorDelay);
+			}
+			epochAggregator.add(netForce, timestampNanos);
+		}
+
+		@Override
+		public void onEpoch(final long epochEndMillis) {
+			if (mQuit) {
+				return;
+			}
+			final EpochFeatures features = new EpochFeatures();
+			epochAggregator.closeEpoch(features);
+			if (governSensorRate && rateGovernor.onEpoch(features.max)) {
+				requestSensorDelay(SLOW_SENSOR_DELAY);
+			}
+			recorder.post(new Runnable() {
+				@Override
+				public void run() {
+					recordEpoch(epochEndMillis, features);
+				}
+			});
+		}
 
-			final PointD sleepPoint = new PointD(x, y);
-			if (sleepData.size() >= MAX_POINTS_IN_A_GRAPH) {
-				sleepData.remove(0);
+		@Override
+		public void onGap(final long gapStartMillis, final int epochCount) {
+			if (mQuit) {
+				return;
 			}
+			recorder.post(new Runnable() {
+				@Override
+				public void run() {
+					recordGap(gapStartMillis, epochCount);
+				}
+			});
+		}
+
+		void quit() {
+			mQuit = true;
+			LockSupport.unpark(this);
+		}
 
-			sleepData.add(sleepPoint);
+		@Override
+		public void run() {
+			while (!mQuit) {
+				if (sensorSamples.drain(this, SENSOR_DRAIN_BATCH) == 0) {
+					sensorSamples.await(SENSOR_AWAIT_NANOS);
+				}
+			}
+		}
+	}
 
-			// append the two doubles in sleepPoint to file
+	/**
+	 * Record an epoch closed by the sensor consumer: plot it, journal it, tell
+	 * the UI and check the smart-wake alarm. Runs on the recorder thread.
+	 */
+	private void recordEpoch(final long epochEndMillis, final EpochFeatures features) {
+		final double x = epochEndMillis;
+		final double y = java.lang.Math
+				.min(SettingsActivity.MAX_ALARM_SENSITIVITY, features.max);
+
+		sleepData.add(x, y);
+		sleepAnalyzer.add(x, y);
+
+		// append the point to the journal
+		final SleepDataJournal j = journal;
+		if (j != null) {
 			try {
-				synchronized (DATA_LOCK) {
-					final FileOutputStream fos = openFileOutput(SLEEP_DATA, Context.MODE_APPEND);
-					fos.write(PointD.toByteArray(sleepPoint));
-					fos.close();
+				if (j.append(x, y, features)) {
+					checkpoint(j);
 				}
 			} catch (final IOException e) {
-				GoogleAnalyticsTracker.getInstance().trackEvent(Integer.toString(VERSION.SDK_INT),
-						Build.MODEL, "sleepMonitorCacheFailWrite : " + e.getMessage(), 0);
+				GoogleAnalyticsTracker.getInstance().trackEvent(
+						Integer.toString(VERSION.SDK_INT), Build.MODEL,
+						"sleepMonitorCacheFailWrite : " + e.getMessage(), 0);
 			}
+		}
 
-			final Intent i = new Intent(SleepActivity.UPDATE_CHART);
-			i.putExtra(EXTRA_X, x);
-			i.putExtra(EXTRA_Y, y);
-			
-			//TODO: ensure that this isn't needed anymore.
-			//i.putExtra(StartSleepReceiver.EXTRA_ALARM, alarmTriggerSensitivity);
-			sendBroadcast(i);
+		publishLivePoint(x, y);
 
-			maxNetForce = 0;
+		final long now = System.currentTimeMillis();
+		lightSleepPredictor.add(x, y);
+		prearmAlarmIfNecessary(now);
+		triggerAlarmIfNecessary(now, y);
+	}
 
-			triggerAlarmIfNecessary(currentTime, y);
+	/**
+	 * Journal a run of epochs that received no samples, e.g. because the
+	 * device suspended. Gaps are not plotted. Runs on the recorder thread.
+	 */
+	private void recordGap(final long gapStartMillis, final int epochCount) {
+		Log.d(TAG, "No sensor samples for " + epochCount + " epoch(s).");
+		final SleepDataJournal j = journal;
+		if (j != null) {
+			try {
+				if (j.appendGap(gapStartMillis, epochCount)) {
+					checkpoint(j);
+				}
+			} catch (final IOException e) {
+				GoogleAnalyticsTracker.getInstance().trackEvent(Integer.toString(VERSION.SDK_INT),
+						Build.MODEL, "sleepMonitorCacheFailWrite : " + e.getMessage(), 0);
+			}
 		}
 	}
 
@@ -94,17 +246,45 @@ public class SleepMonitoringService extends Service implements SensorEventListen
 
 	public static final String EXTRA_ID = "id";
 	public static final String EXTRA_NAME = "name";
-	public static final String EXTRA_X = "x";
-	public static final String EXTRA_Y = "y";
+	public static final String EXTRA_SESSION_ID = "sessionId";
+	public static final String EXTRA_SUMMARY = "summary";
 	private final static int INTERVAL = 5000;
+
+	/** Roughly five seconds of samples at SENSOR_DELAY_FASTEST. */
+	private static final int SENSOR_BUFFER_CAPACITY = 1024;
+	private static final int SENSOR_DRAIN_BATCH = 64;
+	private static final long SENSOR_AWAIT_NANOS = 250 * 1000 * 1000L;
+
+	/**
+	 * Rate used while the sleeper is still. Before Gingerbread only the
+	 * SENSOR_DELAY constants are accepted, so nothing slower than the default
+	 * can be asked for there.
+	 */
+	private static final int SLOW_SENSOR_DELAY = VERSION.SDK_INT >= Build.VERSION_CODES.GINGERBREAD
+			? 500 * 1000 : SensorManager.SENSOR_DELAY_NORMAL;
+
+	/** Fraction of the calibration level that counts as movement to the governor. */
+	private static final float GOVERNOR_THRESHOLD_FRACTION = 0.5f;
+
 	public static int MAX_POINTS_IN_A_GRAPH = 200;
 	private static final int NOTIFICATION_ID = 0x1337a;
 
-	// Object for intrinsic lock
-	public static final Object[] DATA_LOCK = new Object[0];
+	/** Sync the journal about once a minute at the default interval. */
+	private static final int JOURNAL_SYNC_EVERY_EPOCHS = 12;
+	private static final long JOURNAL_SYNC_INTERVAL_MS = 60 * 1000;
+
+	/** How long before a predicted light sleep window the alarm is prepared. */
+	private static final long ALARM_PREARM_LEAD_MS = 2 * 60 * 1000;
 
 	public static final String SERVICE_IS_RUNNING = "serviceIsRunning";
 
+	/**
+	 * The ringer mode and airplane mode from before the session, kept with
+	 * {@link #SERVICE_IS_RUNNING} so a resumed session still restores them.
+	 */
+	private static final String RINGER_MODE_BACKUP = "ringerModeBackup";
+	private static final String AIRPLANE_MODE_BACKUP = "airplaneModeBackup";
+
 	public static final String SLEEP_DATA = "sleepData";
     public static final String SLEEP_START = "com.androsz.electricsleepbeta.SLEEP_START";
     public static final String SLEEP_STOPPED = "com.androsz.electricsleepbeta.SLEEP_STOPPED";
@@ -120,20 +300,53 @@ public class SleepMonitoringService extends Service implements SensorEventListen
 	private float alarmTriggerSensitivity = SettingsActivity.DEFAULT_ALARM_SENSITIVITY;
 	private int alarmWindow = 30;
 
-	final float alpha = 0.8f;
-	private boolean alreadyDeletedResidualFile = false;
 
-	private Date dateStarted;
+	/** Moved back to the journal's start when a session is resumed. */
+	private volatile Date dateStarted;
 
 	private boolean forceScreenOn = false;
 
-	private final float[] gravity = { 0, 0, 0 };
+	/** Opened in onStartCommand; appended to and closed by the recorder thread. */
+	private volatile SleepDataJournal journal;
+
+	private final MovementFeatureExtractor movementExtractor = new MovementFeatureExtractor();
+
+	// fed and closed by the sensor consumer
+	private final EpochFeatureAggregator epochAggregator = new EpochFeatureAggregator(
+			SettingsActivity.DEFAULT_ALARM_SENSITIVITY);
+
+	private final Handler handler = new Handler();
+
+	private final CopyOnWriteArrayList<LiveUpdateListener> liveUpdateListeners = new CopyOnWriteArrayList<LiveUpdateListener>();
 
-	private double maxNetForce = SettingsActivity.DEFAULT_MIN_SENSITIVITY;
-	private int ringerModeBackup = AudioManager.RINGER_MODE_NORMAL;
+	/** Points recorded but not yet delivered to the live update listeners. */
+	private final XYRingBuffer pendingLivePoints = new XYRingBuffer(MAX_POINTS_IN_A_GRAPH);
+
+	private final AtomicBoolean liveUpdatePosted = new AtomicBoolean();
+
+	private final LiveUpdateDispatcher liveUpdateDispatcher = new LiveUpdateDispatcher();
+
+	/** Only driven by the sensor consumer. */
+	private final SensorRateGovernor rateGovernor = new SensorRateGovernor(
+			SettingsActivity.DEFAULT_ALARM_SENSITIVITY * GOVERNOR_THRESHOLD_FRACTION);
+
+	/** False if the configured rate is already as slow as the governor's. */
+	private volatile boolean governSensorRate = false;
 
 	public int sensorDelay = SensorManager.SENSOR_DELAY_NORMAL;
 
+	private final SampleRingBuffer sensorSamples = new SampleRingBuffer(SENSOR_BUFFER_CAPACITY);
+
+	private SensorConsumerThread sensorConsumer;
+
+	/**
+	 * Records closed epochs in order on its own thread: journal writes and
+	 * syncs, alarm lookups and analytics may all block. Set while monitoring.
+	 */
+	private volatile Handler recorder;
+
+	private HandlerThread recorderThread;
+
 	private final BroadcastReceiver serviceReceiver = new BroadcastReceiver() {
 		@Override
 		public void onReceive(final Context context, final Intent intent) {
@@ -183,26 +396,77 @@ public class SleepMonitoringService extends Service implements SensorEventListen
 		}
 	};
 
+	/**
+	 * Marks the cached next alarm stale whenever an alarm is added, changed or
+	 * removed.
+	 */
+	private class AlarmsContentObserver extends ContentObserver {
+
+		public AlarmsContentObserver() {
+			super(new Handler());
+		}
+
+		@Override
+		public void onChange(final boolean selfChange) {
+			invalidateNextAlarm();
+			super.onChange(selfChange);
+		}
+	}
+
+	private AlarmsContentObserver alarmsObserver;
+
+	/** Marks the cached next alarm stale when the wall clock or zone moves. */
+	private final BroadcastReceiver timeChangedReceiver = new BroadcastReceiver() {
+		@Override
+		public void onReceive(final Context context, final Intent intent) {
+			invalidateNextAlarm();
+		}
+	};
+
+	/**
+	 * Next enabled alarm as of the last lookup, or null if there was none.
+	 * Only valid while {@link #nextAlarmValid} is set.
+	 */
+	private volatile Alarm nextAlarm;
+	private volatile boolean nextAlarmValid = false;
+
 	private boolean silentMode = false;
 
-	private final ArrayList<PointD> sleepData = new ArrayList<PointD>();
+	private final XYRingBuffer sleepData = new XYRingBuffer(MAX_POINTS_IN_A_GRAPH);
+
+	/**
+	 * Tracks the night's cycles to foresee light sleep; only touched by the
+	 * recorder thread once it runs.
+	 */
+	private LightSleepPredictor lightSleepPredictor = new LightSleepPredictor();
+
+	/** Whether the alarm was already prepared for a predicted light sleep. */
+	private boolean alarmPrearmed = false;
+
+	/** Summary of the whole night so far; null until the session starts. */
+	private volatile IncrementalSleepAnalyzer sleepAnalyzer;
 
 	private int testModeRate = Integer.MIN_VALUE;
 
 	private int updateInterval = INTERVAL;;
 
-	Timer updateTimer;
-
 	private boolean useAlarm = false;
 
-	int waitForSensorsToWarmUp = 0;
-
 	private Intent addExtrasToSaveSleepIntent(final Intent saveIntent) {
 		saveIntent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP
 				| Intent.FLAG_ACTIVITY_PREVIOUS_IS_TOP);
 		saveIntent.putExtra(EXTRA_ID, hashCode());
 		saveIntent.putExtra(StartSleepReceiver.EXTRA_ALARM, alarmTriggerSensitivity);
 
+		// saving only has to check that the summary belongs to the journal
+		// and counts every epoch in it.
+		final SleepDataJournal j = journal;
+		final IncrementalSleepAnalyzer analyzer = sleepAnalyzer;
+		if (j != null && analyzer != null) {
+			saveIntent.putExtra(EXTRA_SESSION_ID, j.getSessionId());
+			saveIntent.putExtra(EXTRA_SUMMARY, analyzer.getSummary());
+		}
+
 		// send start/end time as well
 		final DateFormat sdf = DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT,
 				Locale.getDefault());
@@ -305,7 +569,13 @@ public class SleepMonitoringService extends Service implements SensorEventListen
 
 		registerReceiver(serviceReceiver, filter);
 
-		updateTimer = new Timer();
+		final IntentFilter timeFilter = new IntentFilter(Intent.ACTION_TIME_CHANGED);
+		timeFilter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
+		registerReceiver(timeChangedReceiver, timeFilter);
+
+		alarmsObserver = new AlarmsContentObserver();
+		getContentResolver().registerContentObserver(Alarm.Columns.CONTENT_URI, true,
+				alarmsObserver);
 
 		dateStarted = new Date();
 	}
@@ -316,16 +586,19 @@ public class SleepMonitoringService extends Service implements SensorEventListen
         Log.d(TAG, "Destroying sleep monitoring service.");
 
         unregisterAccelerometerListener();
+		stopSensorConsumer();
+		stopRecorder();
 
 		WakeLockManager.release("sleepMonitoring");
 
 		unregisterReceiver(serviceReceiver);
+		unregisterReceiver(timeChangedReceiver);
+		getContentResolver().unregisterContentObserver(alarmsObserver);
 
 		// tell monitoring activities that sleep has ended
 		sendBroadcast(new Intent(SLEEP_STOPPED));
 
 		stopForeground(true);
-		updateTimer.cancel();
 
 		new AsyncTask<Void, Void, Void>() {
 
@@ -346,46 +619,8 @@ public class SleepMonitoringService extends Service implements SensorEventListen
 
 	@Override
 	public void onSensorChanged(final SensorEvent event) {
-		new Thread(new Runnable() {
-
-			@Override
-			public void run() {
-				synchronized (gravity) {
-
-					if (waitForSensorsToWarmUp < 5) {
-						if (waitForSensorsToWarmUp == 4) {
-							waitForSensorsToWarmUp++;
-							try {
-								updateTimer.scheduleAtFixedRate(new UpdateTimerTask(),
-										updateInterval, updateInterval);
-							} catch (IllegalStateException ise) {
-								// user stopped monitoring really quickly after
-								// starting.
-                                Log.d(TAG, "User stopped monitoring quickly after starting.");
-							}
-							gravity[0] = event.values[0];
-							gravity[1] = event.values[1];
-							gravity[2] = event.values[2];
-						}
-						waitForSensorsToWarmUp++;
-						return;
-					}
-
-					gravity[0] = alpha * gravity[0] + (1 - alpha) * event.values[0];
-					gravity[1] = alpha * gravity[1] + (1 - alpha) * event.values[1];
-					gravity[2] = alpha * gravity[2] + (1 - alpha) * event.values[2];
-
-					final double curX = event.values[0] - gravity[0];
-					final double curY = event.values[1] - gravity[1];
-					final double curZ = event.values[2] - gravity[2];
-
-					final double mAccelCurrent = Math.sqrt(curX * curX + curY * curY + curZ * curZ);
-
-					final double absAccel = Math.abs(mAccelCurrent);
-					maxNetForce = absAccel > maxNetForce ? absAccel : maxNetForce;
-				}
-			}
-		}).start();
+		// only copy the sample; all processing happens on the consumer thread.
+		sensorSamples.offer(event.values[0], event.values[1], event.values[2], event.timestamp);
 	}
 
 	@Override
@@ -393,6 +628,9 @@ public class SleepMonitoringService extends Service implements SensorEventListen
         if (intent != null && mRunning.compareAndSet(false, true)) {
             Log.d(TAG, "Starting sleep monitoring service: " + startId);
 
+			// the intent is only redelivered if we were killed mid-session.
+			final boolean redelivered = (flags & START_FLAG_REDELIVERY) != 0;
+
             testModeRate = intent.getIntExtra("testModeRate", Integer.MIN_VALUE);
 
 			updateInterval = testModeRate == Integer.MIN_VALUE ? intent.getIntExtra("interval",
@@ -405,6 +643,11 @@ public class SleepMonitoringService extends Service implements SensorEventListen
                 StartSleepReceiver.EXTRA_ALARM,
                 SettingsActivity.DEFAULT_ALARM_SENSITIVITY);
 
+			epochAggregator.setCrossingThreshold(alarmTriggerSensitivity);
+			rateGovernor.setThreshold(alarmTriggerSensitivity * GOVERNOR_THRESHOLD_FRACTION);
+			governSensorRate = getSensorPeriodMicros(sensorDelay) < getSensorPeriodMicros(
+					SLOW_SENSOR_DELAY);
+
 			useAlarm = intent.getBooleanExtra(StartSleepReceiver.EXTRA_USE_ALARM, false);
 			alarmWindow = intent.getIntExtra(StartSleepReceiver.EXTRA_ALARM_WINDOW, 0);
 
@@ -417,30 +660,175 @@ public class SleepMonitoringService extends Service implements SensorEventListen
 
 			obtainWakeLock();
 
-			registerAccelerometerListener();
-
-			new AsyncTask<Void, Void, Void>() {
+			sleepAnalyzer = new IncrementalSleepAnalyzer(alarmTriggerSensitivity,
+					MAX_POINTS_IN_A_GRAPH);
 
+			// the journal is opened on the recorder thread, ahead of the first
+			// epoch.
+			startRecorder();
+			recorder.post(new Runnable() {
 				@Override
-				protected Void doInBackground(Void... params) {
-					toggleSilentMode(true);
-					toggleAirplaneMode(true);
-
-					if (!alreadyDeletedResidualFile) {
-						// TODO: doesn't happen more than once? right?
-						deleteFile(SleepMonitoringService.SLEEP_DATA);
-						alreadyDeletedResidualFile = true;
+				public void run() {
+					final boolean resumed = redelivered && resumeJournal();
+					if (!resumed) {
+						createJournal();
+						// already applied before we were killed otherwise, with
+						// the modes to restore still saved
+						toggleSilentMode(true);
+						toggleAirplaneMode(true);
 					}
+
 					final SharedPreferences.Editor ed = getSharedPreferences(SERVICE_IS_RUNNING,
 							Context.MODE_PRIVATE).edit();
 					ed.putBoolean(SERVICE_IS_RUNNING, true);
 					ed.commit();
-					return null;
 				}
-			}.execute();
+			});
+			startSensorConsumer();
+			registerAccelerometerListener();
+		} else if (intent == null && !mRunning.get()) {
+			// restarted without our start intent; save what we have.
+			finishAbandonedJournal();
+		}
+
+		return START_REDELIVER_INTENT;
+	}
+
+	/**
+	 * Start a new journal for this session, replacing whatever is left of the
+	 * previous one.
+	 */
+	private void createJournal() {
+		final long sessionId = UUID.randomUUID().getMostSignificantBits();
+		try {
+			journal = SleepDataJournal.create(getFileStreamPath(SLEEP_DATA), sessionId,
+					dateStarted.getTime(), alarmTriggerSensitivity, JOURNAL_SYNC_EVERY_EPOCHS,
+					JOURNAL_SYNC_INTERVAL_MS);
+		} catch (final IOException e) {
+			GoogleAnalyticsTracker.getInstance().trackEvent(Integer.toString(VERSION.SDK_INT),
+					Build.MODEL, "sleepMonitorCacheFailCreate : " + e.getMessage(), 0);
+		}
+	}
+
+	/**
+	 * Pick up an unfinished journal after the process was killed. The night's
+	 * summary and light sleep prediction are restored from the journal's
+	 * checkpoint and brought up to date with the points after it, at most one
+	 * sync's worth. The last points are put back on the chart. Only a journal
+	 * without a checkpoint is replayed from the start. Runs on the recorder
+	 * thread.
+	 *
+	 * @return false if there was nothing to resume.
+	 */
+	private boolean resumeJournal() {
+		final SleepDataJournal j;
+		try {
+			j = SleepDataJournal.resume(getFileStreamPath(SLEEP_DATA),
+					JOURNAL_SYNC_EVERY_EPOCHS, JOURNAL_SYNC_INTERVAL_MS);
+		} catch (final IOException e) {
+			GoogleAnalyticsTracker.getInstance().trackEvent(Integer.toString(VERSION.SDK_INT),
+					Build.MODEL, "sleepMonitorCacheFailResume : " + e.getMessage(), 0);
+			return false;
+		}
+		if (j == null) {
+			return false;
+		}
+
+		dateStarted = new Date(j.getStartTimestamp());
+		final int count = j.getPointCount();
+		int replayed = 0;
+		try {
+			final SleepDataJournal.Checkpoint checkpoint = j.readCheckpoint();
+			if (checkpoint != null && restoreCheckpoint(checkpoint.state)) {
+				replayed = checkpoint.pointCount;
+			}
+		} catch (final IOException e) {
+			GoogleAnalyticsTracker.getInstance().trackEvent(Integer.toString(VERSION.SDK_INT),
+					Build.MODEL, "sleepMonitorCacheFailCheckpoint : " + e.getMessage(), 0);
+		}
+		for (int i = replayed; i < count; i++) {
+			if (!j.isGap(i)) {
+				sleepAnalyzer.add(j.getX(i), j.getY(i));
+				lightSleepPredictor.add(j.getX(i), j.getY(i));
+			}
+		}
+		for (int i = Math.max(0, count - MAX_POINTS_IN_A_GRAPH); i < count; i++) {
+			if (!j.isGap(i)) {
+				sleepData.add(j.getX(i), j.getY(i));
+			}
+		}
+		journal = j;
+		Log.d(TAG, "Resumed sleep journal with " + count + " points, " + (count - replayed)
+				+ " replayed.");
+		return true;
+	}
+
+	/**
+	 * Save the night's summary and light sleep prediction next to the journal,
+	 * which was just forced to disk, so a resume need not replay the night.
+	 */
+	private void checkpoint(final SleepDataJournal j) {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			sleepAnalyzer.writeState(out);
+			lightSleepPredictor.writeState(out);
+			out.flush();
+			j.writeCheckpoint(bytes.toByteArray());
+		} catch (final IOException e) {
+			GoogleAnalyticsTracker.getInstance().trackEvent(Integer.toString(VERSION.SDK_INT),
+					Build.MODEL, "sleepMonitorCacheFailCheckpoint : " + e.getMessage(), 0);
+		}
+	}
+
+	/**
+	 * Replace the night's summary and light sleep prediction with what a
+	 * checkpoint saved.
+	 *
+	 * @return false, changing nothing, if state cannot be read.
+	 */
+	private boolean restoreCheckpoint(final byte[] state) {
+		final IncrementalSleepAnalyzer analyzer = new IncrementalSleepAnalyzer(
+				alarmTriggerSensitivity, MAX_POINTS_IN_A_GRAPH);
+		final LightSleepPredictor predictor = new LightSleepPredictor();
+		try {
+			final DataInputStream in = new DataInputStream(new ByteArrayInputStream(state));
+			analyzer.readState(in);
+			predictor.readState(in);
+		} catch (final IOException e) {
+			Log.w(TAG, "Could not restore the sleep journal checkpoint: " + e.getMessage());
+			return false;
+		}
+		sleepAnalyzer = analyzer;
+		lightSleepPredictor = predictor;
+		return true;
+	}
+
+	/**
+	 * Finalize an unfinished journal that cannot be resumed and offer to save
+	 * it.
+	 */
+	private void finishAbandonedJournal() {
+		final File file = getFileStreamPath(SLEEP_DATA);
+		SleepDataJournal.Header header = null;
+		try {
+			final SleepDataJournal j = SleepDataJournal.resume(file, JOURNAL_SYNC_EVERY_EPOCHS,
+					JOURNAL_SYNC_INTERVAL_MS);
+			if (j != null) {
+				j.finish();
+				header = SleepDataJournal.readHeader(file);
+			}
+		} catch (final IOException e) {
+			GoogleAnalyticsTracker.getInstance().trackEvent(Integer.toString(VERSION.SDK_INT),
+					Build.MODEL, "sleepMonitorCacheFailRecover : " + e.getMessage(), 0);
 		}
 
-		return START_STICKY;
+		if (header != null && header.pointCount > 0) {
+			dateStarted = new Date(header.startTimestamp);
+			alarmTriggerSensitivity = header.calibrationLevel;
+			createSaveSleepNotification();
+		}
+		stopSelf();
 	}
 
     public float getAlarmTriggerSensitivity() {
@@ -451,10 +839,37 @@ public class SleepMonitoringService extends Service implements SensorEventListen
         return alarmWindow;
     }
 
-    public List<PointD> getData() {
+    /**
+     * The live chart window. Read it in place; it is updated every epoch.
+     */
+    public XYRingBuffer getData() {
         return sleepData;
     }
 
+    /**
+     * The night so far: spikes, time fell asleep and the points that would be
+     * saved. Null if no session has started.
+     */
+    public SleepSummary getSummary() {
+        final IncrementalSleepAnalyzer analyzer = sleepAnalyzer;
+        return analyzer == null ? null : analyzer.getSummary();
+    }
+
+    /**
+     * Number of accelerometer samples dropped because the sensor consumer
+     * could not keep up.
+     */
+    public long getDroppedSampleCount() {
+        return sensorSamples.getDroppedCount();
+    }
+
+    /**
+     * Deepest backlog of unprocessed accelerometer samples seen so far.
+     */
+    public int getMaxSampleQueueDepth() {
+        return sensorSamples.getMaxDepth();
+    }
+
     public boolean getUseAlarm() {
         return useAlarm;
     }
@@ -470,12 +885,142 @@ public class SleepMonitoringService extends Service implements SensorEventListen
 				sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER), sensorDelay);
 	}
 
+	/**
+	 * Queue a point for the live update listeners. At most one delivery is
+	 * posted to the main thread at a time; points recorded before it runs ride
+	 * along. Nothing is queued when no one is listening.
+	 */
+	private void publishLivePoint(final double x, final double y) {
+		if (liveUpdateListeners.isEmpty()) {
+			return;
+		}
+		pendingLivePoints.add(x, y);
+		if (liveUpdatePosted.compareAndSet(false, true)) {
+			handler.post(liveUpdateDispatcher);
+		}
+	}
+
+	/**
+	 * The sampling period a sensor delay asks for. Delays other than the
+	 * SENSOR_DELAY constants already are periods in microseconds.
+	 */
+	private static int getSensorPeriodMicros(final int delay) {
+		switch (delay) {
+		case SensorManager.SENSOR_DELAY_FASTEST:
+			return 0;
+		case SensorManager.SENSOR_DELAY_GAME:
+			return 20 * 1000;
+		case SensorManager.SENSOR_DELAY_UI:
+			return 60 * 1000;
+		case SensorManager.SENSOR_DELAY_NORMAL:
+			return 200 * 1000;
+		default:
+			return delay;
+		}
+	}
+
+	/**
+	 * Re-register the accelerometer at delay. Posted to the main thread so it
+	 * cannot race with onDestroy unregistering the listener.
+	 */
+	private void requestSensorDelay(final int delay) {
+		handler.post(new Runnable() {
+			@Override
+			public void run() {
+				if (sensorConsumer == null) {
+					// already stopped
+					return;
+				}
+				Log.d(TAG, "Switching sensor delay to " + delay + ". fastMs="
+						+ rateGovernor.getFastMillis() + " slowMs="
+						+ rateGovernor.getSlowMillis());
+				final SensorManager sensorManager = (SensorManager) getSystemService(Context.SENSOR_SERVICE);
+				sensorManager.unregisterListener(SleepMonitoringService.this);
+				sensorManager.registerListener(SleepMonitoringService.this,
+						sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER), delay);
+			}
+		});
+	}
+
+	private void closeJournal() {
+		final SleepDataJournal j = journal;
+		if (j == null) {
+			return;
+		}
+		try {
+			j.finish();
+		} catch (final IOException e) {
+			GoogleAnalyticsTracker.getInstance().trackEvent(Integer.toString(VERSION.SDK_INT),
+					Build.MODEL, "sleepMonitorCacheFailClose : " + e.getMessage(), 0);
+		}
+	}
+
+	private void startRecorder() {
+		recorderThread = new HandlerThread("SleepRecorder");
+		recorderThread.start();
+		recorder = new Handler(recorderThread.getLooper());
+	}
+
+	/**
+	 * Close the journal once the epochs already handed over are recorded,
+	 * then let the recorder thread end.
+	 */
+	private void stopRecorder() {
+		if (recorderThread == null) {
+			return;
+		}
+		recorderThread = null;
+		recorder.post(new Runnable() {
+			@Override
+			public void run() {
+				closeJournal();
+				Looper.myLooper().quit();
+			}
+		});
+	}
+
+	private void startSensorConsumer() {
+		sensorConsumer = new SensorConsumerThread(updateInterval);
+		sensorConsumer.start();
+	}
+
+	private void stopSensorConsumer() {
+		if (sensorConsumer == null) {
+			return;
+		}
+		sensorConsumer.quit();
+		sensorConsumer = null;
+
+		final long dropped = sensorSamples.getDroppedCount();
+		Log.d(TAG, "Sensor consumer stopped. dropped=" + dropped + " maxQueueDepth="
+				+ sensorSamples.getMaxDepth() + "/" + sensorSamples.getCapacity());
+		if (dropped > 0) {
+			GoogleAnalyticsTracker.getInstance().trackEvent(Integer.toString(VERSION.SDK_INT),
+					Build.MODEL, "sleepMonitorDroppedSamples : " + dropped, 0);
+		}
+		Log.d(TAG, "Time at configured sensor rate: " + rateGovernor.getFastMillis()
+				+ "ms, at slow rate: " + rateGovernor.getSlowMillis() + "ms, switches: "
+				+ rateGovernor.getSwitchCount());
+	}
+
 	private void toggleAirplaneMode(final boolean enabling) {
 		if (airplaneMode) {
+			final SharedPreferences prefs = getSharedPreferences(SERVICE_IS_RUNNING,
+					Context.MODE_PRIVATE);
+			final boolean on;
+			if (enabling) {
+				prefs.edit().putBoolean(AIRPLANE_MODE_BACKUP,
+						Settings.System.getInt(getContentResolver(),
+								Settings.System.AIRPLANE_MODE_ON, 0) != 0).commit();
+				on = true;
+			} else {
+				on = prefs.getBoolean(AIRPLANE_MODE_BACKUP, false);
+				prefs.edit().remove(AIRPLANE_MODE_BACKUP).commit();
+			}
 			Settings.System.putInt(getContentResolver(), Settings.System.AIRPLANE_MODE_ON,
-					enabling ? 1 : 0);
+					on ? 1 : 0);
 			final Intent intent = new Intent(Intent.ACTION_AIRPLANE_MODE_CHANGED);
-			intent.putExtra("state", enabling);
+			intent.putExtra("state", on);
 			sendBroadcast(intent);
 		}
 	}
@@ -483,24 +1028,93 @@ public class SleepMonitoringService extends Service implements SensorEventListen
 	private void toggleSilentMode(final boolean enabling) {
 		if (silentMode) {
 			final AudioManager audioManager = (AudioManager) getSystemService(AUDIO_SERVICE);
+			final SharedPreferences prefs = getSharedPreferences(SERVICE_IS_RUNNING,
+					Context.MODE_PRIVATE);
 			if (enabling) {
-				ringerModeBackup = audioManager.getRingerMode();
+				prefs.edit().putInt(RINGER_MODE_BACKUP, audioManager.getRingerMode()).commit();
 				audioManager.setRingerMode(AudioManager.RINGER_MODE_SILENT);
 			} else {
-				audioManager.setRingerMode(ringerModeBackup);
+				audioManager.setRingerMode(prefs.getInt(RINGER_MODE_BACKUP,
+						AudioManager.RINGER_MODE_NORMAL));
+				prefs.edit().remove(RINGER_MODE_BACKUP).commit();
+			}
+		}
+	}
+
+	/**
+	 * Shortly before the predicted light sleep window, if it falls inside the
+	 * alarm window, load the alarm's sound so it can start without waiting on
+	 * storage. Done at most once a night, on the recorder thread.
+	 */
+	private void prearmAlarmIfNecessary(final long currentTime) {
+		if (!useAlarm || alarmPrearmed) {
+			return;
+		}
+		final long lightSleep = lightSleepPredictor.getNextLightSleepStart();
+		if (lightSleep < 0 || currentTime < lightSleep - ALARM_PREARM_LEAD_MS) {
+			return;
+		}
+		final Alarm alarm = getNextAlarm(currentTime);
+		if (alarm == null) {
+			return;
+		}
+		final long windowStart = alarm.time - alarmWindow * 60 * 1000L;
+		if (lightSleep + lightSleepPredictor.getWindowMillis() < windowStart
+				|| lightSleep > alarm.time) {
+			return;
+		}
+
+		alarmPrearmed = true;
+		Log.d(TAG, "Light sleep expected at " + lightSleep + ", pre-arming alarm " + alarm.id);
+		if (alarm.silent) {
+			return;
+		}
+		final Uri alert = alarm.alert != null ? alarm.alert : RingtoneManager
+				.getDefaultUri(RingtoneManager.TYPE_ALARM);
+		// queued behind this epoch so the alarm check below is not held up.
+		recorder.post(new Runnable() {
+			@Override
+			public void run() {
+				preloadAlarmSound(alert);
+			}
+		});
+	}
+
+	/**
+	 * Read the sound at alert once, which leaves it in the page cache for the
+	 * klaxon.
+	 */
+	private void preloadAlarmSound(final Uri alert) {
+		InputStream in = null;
+		try {
+			in = getContentResolver().openInputStream(alert);
+			final byte[] buffer = new byte[8192];
+			long length = 0;
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				length += read;
+			}
+			Log.d(TAG, "Pre-loaded " + length + " bytes of alarm sound.");
+		} catch (final IOException e) {
+			Log.w(TAG, "Could not pre-load the alarm sound: " + e.getMessage());
+		} catch (final SecurityException e) {
+			Log.w(TAG, "Could not pre-load the alarm sound: " + e.getMessage());
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (final IOException e) {
+					Log.w(TAG, "Could not close the alarm sound: " + e.getMessage());
+				}
 			}
 		}
 	}
 
 	private void triggerAlarmIfNecessary(final long currentTime, final double y) {
 		if (useAlarm && y >= alarmTriggerSensitivity) {
-			// TODO: stop calling calculateNextAlert here... battery waster
-			final Alarm alarm = Alarms.calculateNextAlert(this);
+			final Alarm alarm = getNextAlarm(currentTime);
 			if (alarm != null) {
-				final Calendar alarmTime = Calendar.getInstance();
-				alarmTime.setTimeInMillis(alarm.time);
-				alarmTime.add(Calendar.MINUTE, alarmWindow * -1);
-				final long alarmMillis = alarmTime.getTimeInMillis();
+				final long alarmMillis = alarm.time - alarmWindow * 60 * 1000L;
 				if (currentTime >= alarmMillis) {
 					final SharedPreferences alarmPrefs = getSharedPreferences(
 							SettingsActivity.PREFERENCES, 0);
@@ -517,6 +1131,25 @@ public class SleepMonitoringService extends Service implements SensorEventListen
 		}
 	}
 
+	/**
+	 * Return the next enabled alarm, only going to the alarm provider when the
+	 * cached one is stale or has already gone off.
+	 */
+	private Alarm getNextAlarm(final long now) {
+		Alarm alarm = nextAlarm;
+		if (!nextAlarmValid || (alarm != null && now > alarm.time)) {
+			// set first so an invalidation during the lookup is not lost.
+			nextAlarmValid = true;
+			alarm = Alarms.calculateNextAlert(this);
+			nextAlarm = alarm;
+		}
+		return alarm;
+	}
+
+	private void invalidateNextAlarm() {
+		nextAlarmValid = false;
+	}
+
 	private void unregisterAccelerometerListener() {
 		final SensorManager sensorManager = (SensorManager) getSystemService(Context.SENSOR_SERVICE);
 		sensorManager.unregisterListener(this);
@@ -530,5 +1163,21 @@ public class SleepMonitoringService extends Service implements SensorEventListen
         public SleepMonitoringService getService() {
             return SleepMonitoringService.this;
         }
+
+        /**
+         * Start delivering live points to listener on the main thread. Points
+         * recorded before this call are only available through
+         * {@link SleepMonitoringService#getData()}.
+         */
+        public void addLiveUpdateListener(final LiveUpdateListener listener) {
+            liveUpdateListeners.addIfAbsent(listener);
+        }
+
+        public void removeLiveUpdateListener(final LiveUpdateListener listener) {
+            liveUpdateListeners.remove(listener);
+            if (liveUpdateListeners.isEmpty()) {
+                pendingLivePoints.clear();
+            }
+        }
     }
 }
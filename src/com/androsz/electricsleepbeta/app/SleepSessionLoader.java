@@ -0,0 +1,88 @@
+package com.androsz.electricsleepbeta.app;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.v4.content.AsyncTaskLoader;
+
+import com.androsz.electricsleepbeta.db.SleepSession;
+
+/**
+ * Loads the session at a uri together with its data and pyramid, off the UI
+ * thread, and loads it again whenever the session changes. Delivers null if
+ * there is no such session.
+ */
+public class SleepSessionLoader extends AsyncTaskLoader<SleepSession> {
+
+    private final Uri mUri;
+    private final ForceLoadContentObserver mObserver = new ForceLoadContentObserver();
+    private boolean mObserving;
+
+    private SleepSession mSession;
+
+    public SleepSessionLoader(final Context context, final Uri uri) {
+        super(context);
+        mUri = uri;
+    }
+
+    @Override
+    public SleepSession loadInBackground() {
+        final ContentResolver resolver = getContext().getContentResolver();
+        final Cursor cursor = resolver.query(mUri, null, null, null, null);
+        if (cursor == null) {
+            return null;
+        }
+        final SleepSession session;
+        try {
+            if (!cursor.moveToLast()) {
+                return null;
+            }
+            session = new SleepSession(cursor);
+        } finally {
+            cursor.close();
+        }
+
+        // the one session on screen gets its whole pyramid to zoom into.
+        session.loadData(resolver, true);
+        return session;
+    }
+
+    @Override
+    public void deliverResult(final SleepSession session) {
+        mSession = session;
+        if (isStarted()) {
+            super.deliverResult(session);
+        }
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (!mObserving) {
+            getContext().getContentResolver().registerContentObserver(mUri, true, mObserver);
+            mObserving = true;
+        }
+        if (mSession != null) {
+            deliverResult(mSession);
+        }
+        if (takeContentChanged() || mSession == null) {
+            forceLoad();
+        }
+    }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        onStopLoading();
+        mSession = null;
+        if (mObserving) {
+            getContext().getContentResolver().unregisterContentObserver(mObserver);
+            mObserving = false;
+        }
+    }
+}
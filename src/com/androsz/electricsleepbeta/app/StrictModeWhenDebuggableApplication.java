@@ -1,5 +1,7 @@
 package com.androsz.electricsleepbeta.app;
 
+import com.androsz.electricsleepbeta.content.SaveSleepPipeline;
+import com.androsz.electricsleepbeta.content.SleepDataConverter;
 import com.google.android.apps.analytics.GoogleAnalyticsTracker;
 
 import android.app.Application;
@@ -14,6 +16,11 @@ public class StrictModeWhenDebuggableApplication extends Application {
 		super.onCreate();
         GoogleAnalyticsTracker.getInstance().setAnonymizeIp(true);
 
+		// finish a save the process died in the middle of
+		SaveSleepPipeline.getInstance(this).resumePending();
+		// move sessions saved by older versions to the compact data format
+		SleepDataConverter.start(this);
+
 		final int applicationFlags = getApplicationInfo().flags;
 		// is android:debuggable is set to true?
 		if ((applicationFlags & ApplicationInfo.FLAG_DEBUGGABLE) != 0) {
@@ -1,11 +1,11 @@
 package com.androsz.electricsleepbeta.app.wizard;
 
 import android.app.Activity;
-import android.content.BroadcastReceiver;
-import android.content.Context;
+import android.content.ComponentName;
 import android.content.Intent;
-import android.content.IntentFilter;
+import android.content.ServiceConnection;
 import android.os.Bundle;
+import android.os.IBinder;
 import android.view.View;
 import android.view.WindowManager;
 import android.widget.SeekBar;
@@ -13,7 +13,6 @@ import android.widget.SeekBar.OnSeekBarChangeListener;
 
 import com.androsz.electricsleepbeta.R;
 import com.androsz.electricsleepbeta.app.SettingsActivity;
-import com.androsz.electricsleepbeta.app.SleepActivity;
 import com.androsz.electricsleepbeta.app.SleepMonitoringService;
 import com.androsz.electricsleepbeta.widget.DecimalSeekBar;
 import com.androsz.electricsleepbeta.widget.SleepChart;
@@ -87,14 +86,13 @@ public class CalibrateLightSleepFragment extends Calibrator {
 		mSeekBar.setProgress(mAlarmTrigger);
 	}
 
-	private final BroadcastReceiver updateChartReceiver = new BroadcastReceiver() {
+	private final SleepMonitoringService.LiveUpdateListener liveUpdateListener = new SleepMonitoringService.LiveUpdateListener() {
 		@Override
-		public void onReceive(final Context context, final Intent intent) {
+		public void onPointsAdded(final double[] x, final double[] y,
+				final int count) {
 			if (mSleepChart != null) {
 
-				mSleepChart.sync(intent.getDoubleExtra(
-						SleepMonitoringService.EXTRA_X, 0), intent
-						.getDoubleExtra(SleepMonitoringService.EXTRA_Y, 0));
+				mSleepChart.sync(x, y, count);
 				mSleepChart.setVisibility(View.VISIBLE);
 				mSeekBar.setVisibility(View.VISIBLE);
 				mWarmingUp.setVisibility(View.GONE);
@@ -105,13 +103,30 @@ public class CalibrateLightSleepFragment extends Calibrator {
 		}
 	};
 
+	private SleepMonitoringService.ServiceBinder mServiceBinder;
+
+	private final ServiceConnection serviceConnection = new ServiceConnection() {
+
+		public void onServiceConnected(ComponentName className, IBinder iBinder) {
+			// called again with a new binder whenever calibration restarts
+			// the service.
+			mServiceBinder = (SleepMonitoringService.ServiceBinder) iBinder;
+			mServiceBinder.addLiveUpdateListener(liveUpdateListener);
+		}
+
+		public void onServiceDisconnected(ComponentName className) {
+			mServiceBinder = null;
+		}
+	};
+
 	@Override
 	public void onResume() {
 		super.onResume();
 		resetViews(getActivity());
-		getActivity().registerReceiver(updateChartReceiver,
-				new IntentFilter(SleepActivity.UPDATE_CHART));
-
+		// don't create the service; calibration starts it.
+		getActivity().bindService(
+				new Intent(getActivity(), SleepMonitoringService.class),
+				serviceConnection, 0);
 	}
 
 	@Override
@@ -119,7 +134,11 @@ public class CalibrateLightSleepFragment extends Calibrator {
 		super.onPause();
 		Activity a = getActivity();
 
-		a.unregisterReceiver(updateChartReceiver);
+		if (mServiceBinder != null) {
+			mServiceBinder.removeLiveUpdateListener(liveUpdateListener);
+			mServiceBinder = null;
+		}
+		a.unbindService(serviceConnection);
 	}
 
 	@Override
@@ -1,6 +1,7 @@
 package com.androsz.electricsleepbeta.app.wizard;
 
 import android.content.Context;
+import android.content.Intent;
 import android.content.SharedPreferences;
 import android.os.Bundle;
 import android.os.PowerManager;
@@ -11,6 +12,7 @@ import android.support.v4.view.PagerAdapter;
 import android.widget.Button;
 
 import com.androsz.electricsleepbeta.R;
+import com.androsz.electricsleepbeta.app.ReanalyzeHistoryService;
 import com.androsz.electricsleepbeta.app.SettingsActivity;
 import com.viewpagerindicator.TitleProvider;
 
@@ -144,6 +146,20 @@ public class CalibrationWizardActivity extends WizardActivity {
                 .getInteger(R.integer.prefs_version));
         ed2.commit();
 
+        if (mHasUserChangedCalibration) {
+            // rescore the history against the new level, instead of any
+            // level still being rescored against
+            startService(new Intent(this, ReanalyzeHistoryService.class)
+                    .setAction(ReanalyzeHistoryService.ACTION_CANCEL));
+            final float alarmTriggerSensitivity = getSharedPreferences(
+                    SettingsActivity.PREFERENCES, 0).getFloat(
+                    getString(R.string.pref_alarm_trigger_sensitivity),
+                    SettingsActivity.DEFAULT_ALARM_SENSITIVITY);
+            startService(new Intent(this, ReanalyzeHistoryService.class).putExtra(
+                    ReanalyzeHistoryService.EXTRA_CALIBRATION_LEVEL,
+                    alarmTriggerSensitivity));
+        }
+
         finish();
     }
 
@@ -0,0 +1,198 @@
+package com.androsz.electricsleepbeta.content;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.OperationApplicationException;
+import android.database.Cursor;
+import android.os.RemoteException;
+import android.util.Log;
+
+import com.androsz.electricsleepbeta.analysis.Downsamplers;
+import com.androsz.electricsleepbeta.analysis.PointListSource;
+import com.androsz.electricsleepbeta.analysis.SleepDataAnalyzer;
+import com.androsz.electricsleepbeta.db.ElectricSleepProvider;
+import com.androsz.electricsleepbeta.db.SleepSession;
+import com.androsz.electricsleepbeta.db.SleepSessionData;
+import com.androsz.electricsleepbeta.util.PointD;
+
+/**
+ * Rescores stored sessions against a new calibration level: their spikes and
+ * fell asleep time are recomputed from the stored data and the new level is
+ * written back with them.
+ *
+ * Rows are read a page at a time in id order. The sessions of a page are
+ * decoded and analyzed on a pool with one thread per core and the page is
+ * written back in a single transaction, after which progress is reported with
+ * the id of the last row done. Starting again after that id resumes the job.
+ * A session that cannot be decoded or analyzed is left as it is and skipped,
+ * so one bad row cannot stop the job for good.
+ */
+public final class HistoryReanalyzer {
+
+	private static final String TAG = HistoryReanalyzer.class.getSimpleName();
+
+	/**
+	 * Told after each page is written.
+	 */
+	public interface ProgressListener {
+		void onProgress(int done, int total, long lastId);
+	}
+
+	/** Rows read, analyzed and written together. */
+	static final int PAGE_SIZE = 32;
+
+	private static final String[] PROJECTION = new String[] { SleepSessionData.SESSION_ID,
+			SleepSessionData.DATA };
+
+	private final ContentResolver mResolver;
+	private final float mCalibrationLevel;
+
+	public HistoryReanalyzer(final ContentResolver resolver, final float calibrationLevel) {
+		mResolver = resolver;
+		mCalibrationLevel = calibrationLevel;
+	}
+
+	/**
+	 * Rescore every session with an id greater than afterId, stopping between
+	 * pages once cancelled is set.
+	 *
+	 * @return the id of the last session rescored, or afterId if none was.
+	 */
+	public long run(final long afterId, final AtomicBoolean cancelled,
+			final ProgressListener listener) throws RemoteException,
+			OperationApplicationException {
+		final int total = countAfter(afterId);
+		final int threads = Runtime.getRuntime().availableProcessors();
+		final ExecutorService pool = new ThreadPoolExecutor(threads, threads, 0,
+				TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
+		try {
+			long lastId = afterId;
+			int done = 0;
+			while (!cancelled.get()) {
+				final List<Future<ContentValues>> page = submitPage(pool, lastId);
+				if (page.isEmpty()) {
+					break;
+				}
+
+				final ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>(
+						page.size());
+				for (final Future<ContentValues> future : page) {
+					final ContentValues values = get(future);
+					lastId = values.getAsLong(SleepSession._ID);
+					values.remove(SleepSession._ID);
+					if (values.size() > 0) {
+						operations.add(ContentProviderOperation
+								.newUpdate(
+										ContentUris.withAppendedId(SleepSession.CONTENT_URI,
+												lastId)).withValues(values).build());
+					}
+				}
+				mResolver.applyBatch(ElectricSleepProvider.CONTENT_AUTHORITY, operations);
+
+				done += page.size();
+				listener.onProgress(done, Math.max(done, total), lastId);
+			}
+			return lastId;
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	private int countAfter(final long afterId) {
+		final Cursor cursor = mResolver.query(SleepSession.CONTENT_URI,
+				new String[] { "count(*)" }, SleepSession._ID + " > ?",
+				new String[] { Long.toString(afterId) }, null);
+		if (cursor == null) {
+			return 0;
+		}
+		try {
+			return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+		} finally {
+			cursor.close();
+		}
+	}
+
+	/**
+	 * Read the next page of rows and queue their analysis. Each result holds
+	 * the row's id and the values to update, if any.
+	 */
+	private List<Future<ContentValues>> submitPage(final ExecutorService pool, final long afterId) {
+		final List<Future<ContentValues>> page = new ArrayList<Future<ContentValues>>(PAGE_SIZE);
+		final Cursor cursor = mResolver.query(SleepSessionData.CONTENT_URI, PROJECTION,
+				SleepSessionData.SESSION_ID + " > ?", new String[] { Long.toString(afterId) },
+				SleepSessionData.SESSION_ID + " ASC LIMIT " + PAGE_SIZE);
+		if (cursor == null) {
+			return page;
+		}
+		try {
+			while (cursor.moveToNext()) {
+				final long id = cursor.getLong(0);
+				final byte[] data = cursor.getBlob(1);
+				page.add(pool.submit(new Callable<ContentValues>() {
+					@Override
+					public ContentValues call() {
+						try {
+							return analyze(id, data);
+						} catch (final RuntimeException e) {
+							Log.w(TAG, "Skipping session " + id + " that could not be analyzed.", e);
+							final ContentValues values = new ContentValues(1);
+							values.put(SleepSession._ID, id);
+							return values;
+						}
+					}
+				}));
+			}
+		} finally {
+			cursor.close();
+		}
+		return page;
+	}
+
+	private ContentValues analyze(final long id, final byte[] data) {
+		final ContentValues values = new ContentValues(4);
+		values.put(SleepSession._ID, id);
+
+		final List<PointD> points;
+		try {
+			points = data == null ? null : SleepSession.decodeData(data);
+		} catch (final Exception e) {
+			Log.w(TAG, "Skipping session " + id + " with unreadable data.");
+			return values;
+		}
+		if (points == null || points.isEmpty()) {
+			return values;
+		}
+
+		// the stored points are few enough to be analyzed as they are.
+		final SleepDataAnalyzer analyzer = new SleepDataAnalyzer(mCalibrationLevel, points.size());
+		analyzer.analyze(new PointListSource(points), Downsamplers.forStorage(mCalibrationLevel));
+		values.put(SleepSession.CALIBRATION_LEVEL, mCalibrationLevel);
+		values.put(SleepSession.SPIKES, analyzer.getSpikes());
+		values.put(SleepSession.FELL_ASLEEP_TIMESTAMP, analyzer.getTimeOfFirstSleep());
+		return values;
+	}
+
+	private static ContentValues get(final Future<ContentValues> future) {
+		try {
+			return future.get();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		} catch (final ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+}
@@ -0,0 +1,408 @@
+package com.androsz.electricsleepbeta.content;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.Intent;
+import android.content.OperationApplicationException;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.RemoteException;
+import android.util.Log;
+
+import com.androsz.electricsleepbeta.R;
+import com.androsz.electricsleepbeta.analysis.ColeKripkeClassifier;
+import com.androsz.electricsleepbeta.analysis.Downsamplers;
+import com.androsz.electricsleepbeta.analysis.PointListSource;
+import com.androsz.electricsleepbeta.analysis.SadehClassifier;
+import com.androsz.electricsleepbeta.analysis.SleepCycleDetector;
+import com.androsz.electricsleepbeta.analysis.SleepDataAnalyzer;
+import com.androsz.electricsleepbeta.analysis.SleepSummary;
+import com.androsz.electricsleepbeta.analysis.SleepWakeClassifier;
+import com.androsz.electricsleepbeta.analysis.SleepWakeScorer;
+import com.androsz.electricsleepbeta.app.SaveSleepActivity;
+import com.androsz.electricsleepbeta.app.SettingsActivity;
+import com.androsz.electricsleepbeta.app.SleepMonitoringService;
+import com.androsz.electricsleepbeta.db.ElectricSleepProvider;
+import com.androsz.electricsleepbeta.db.SleepDataPyramid;
+import com.androsz.electricsleepbeta.db.SleepFingerprint;
+import com.androsz.electricsleepbeta.db.SleepSession;
+import com.androsz.electricsleepbeta.db.SleepSessionData;
+import com.androsz.electricsleepbeta.util.SleepDataJournal;
+
+/**
+ * Saves finished nights one at a time on a single background thread.
+ *
+ * A save is keyed by the journal's session id and runs analyze, insert and
+ * delete the journal, in that order. The request is remembered under its
+ * session id before it is queued and only that record is forgotten once it is
+ * done, so saves queued behind each other keep their own. The inserted row
+ * records the journal's session id, so a save cut short by the process dying
+ * is run again by {@link #resumePending()} without inserting the night twice.
+ * A request for a session that is already queued is dropped.
+ *
+ * Each start of a save is counted in its record. A save that has been started
+ * {@link #MAX_ATTEMPTS} times without finishing, whether it threw or took the
+ * process down with it, is given up on: its record is dropped and the failure
+ * reported, so one bad night cannot crash every start of the app.
+ */
+public final class SaveSleepPipeline {
+
+	private static final String TAG = SaveSleepPipeline.class.getSimpleName();
+
+	/** Session id of a request that does not know its journal. */
+	private static final long UNKNOWN_SESSION = 0;
+
+	private static final String PREFERENCES = "saveSleepPipeline";
+	/**
+	 * A pending request is marked by this prefix and its session id; its
+	 * extras are kept under the marker, a dot and the extra's name.
+	 */
+	private static final String KEY_PENDING = "pending.";
+	/** The extra a pending request counts the starts of its save in. */
+	private static final String KEY_ATTEMPTS = "attempts";
+
+	/** Starts of a save before it is given up on. */
+	static final int MAX_ATTEMPTS = 3;
+
+	private static SaveSleepPipeline sInstance;
+
+	public static synchronized SaveSleepPipeline getInstance(final Context context) {
+		if (sInstance == null) {
+			sInstance = new SaveSleepPipeline(context.getApplicationContext());
+		}
+		return sInstance;
+	}
+
+	private final Context mContext;
+	private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+	/** Session ids queued or being saved; guarded by itself. */
+	private final Set<Long> mQueued = new HashSet<Long>();
+
+	private SaveSleepPipeline(final Context context) {
+		mContext = context;
+	}
+
+	/**
+	 * Queue a save request, as sent by SaveSleepActivity.
+	 */
+	public void submit(final Intent request) {
+		final long sessionId = request.getLongExtra(SleepMonitoringService.EXTRA_SESSION_ID,
+				UNKNOWN_SESSION);
+		if (sessionId != UNKNOWN_SESSION) {
+			synchronized (mQueued) {
+				if (!mQueued.add(sessionId)) {
+					Log.d(TAG, "Already saving session " + sessionId);
+					return;
+				}
+			}
+		}
+		remember(request, sessionId);
+
+		mExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				final int attempt = countAttempt(sessionId);
+				try {
+					save(request, sessionId);
+				} catch (final RuntimeException e) {
+					Log.w(TAG, "Save " + attempt + " of session " + sessionId + " failed.", e);
+					if (attempt >= MAX_ATTEMPTS) {
+						forget(sessionId);
+						fail(e.toString());
+					}
+				} finally {
+					if (sessionId != UNKNOWN_SESSION) {
+						synchronized (mQueued) {
+							mQueued.remove(sessionId);
+						}
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Queue the saves that were pending when the process last died, if any,
+	 * oldest session first. The preferences are read on the pipeline's
+	 * thread, so this may be called from Application.onCreate.
+	 */
+	public void resumePending() {
+		mExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				submitPending();
+			}
+		});
+	}
+
+	private void submitPending() {
+		final SharedPreferences prefs = getPreferences();
+		final Set<Long> pending = new TreeSet<Long>();
+		for (final String key : prefs.getAll().keySet()) {
+			if (!key.startsWith(KEY_PENDING) || key.indexOf('.', KEY_PENDING.length()) >= 0) {
+				continue;
+			}
+			try {
+				pending.add(Long.parseLong(key.substring(KEY_PENDING.length())));
+			} catch (final NumberFormatException e) {
+				Log.w(TAG, "Ignoring pending save " + key);
+			}
+		}
+		for (final long sessionId : pending) {
+			if (prefs.getInt(getPendingKey(sessionId, KEY_ATTEMPTS), 0) >= MAX_ATTEMPTS) {
+				Log.w(TAG, "Giving up on the save of session " + sessionId);
+				forget(sessionId);
+				fail("gave up after " + MAX_ATTEMPTS + " attempts");
+				continue;
+			}
+			Log.d(TAG, "Retrying an interrupted save of session " + sessionId);
+			submit(new Intent(SaveSleepActivity.SAVE_SLEEP)
+					.putExtra(SleepMonitoringService.EXTRA_SESSION_ID, sessionId)
+					.putExtra(
+							StartSleepReceiver.EXTRA_ALARM,
+							prefs.getFloat(getPendingKey(sessionId, StartSleepReceiver.EXTRA_ALARM),
+									SettingsActivity.DEFAULT_ALARM_SENSITIVITY))
+					.putExtra(SaveSleepReceiver.EXTRA_RATING,
+							prefs.getInt(getPendingKey(sessionId, SaveSleepReceiver.EXTRA_RATING), 5))
+					.putExtra(SaveSleepReceiver.EXTRA_NOTE,
+							prefs.getString(getPendingKey(sessionId, SaveSleepReceiver.EXTRA_NOTE), null)));
+		}
+	}
+
+	private static String getPendingKey(final long sessionId, final String extra) {
+		return KEY_PENDING + sessionId + "." + extra;
+	}
+
+	private SharedPreferences getPreferences() {
+		return mContext.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+	}
+
+	private void remember(final Intent request, final long sessionId) {
+		getPreferences()
+				.edit()
+				.putBoolean(KEY_PENDING + sessionId, true)
+				.putFloat(
+						getPendingKey(sessionId, StartSleepReceiver.EXTRA_ALARM),
+						request.getFloatExtra(StartSleepReceiver.EXTRA_ALARM,
+								SettingsActivity.DEFAULT_ALARM_SENSITIVITY))
+				.putInt(getPendingKey(sessionId, SaveSleepReceiver.EXTRA_RATING),
+						request.getIntExtra(SaveSleepReceiver.EXTRA_RATING, 5))
+				.putString(getPendingKey(sessionId, SaveSleepReceiver.EXTRA_NOTE),
+						request.getStringExtra(SaveSleepReceiver.EXTRA_NOTE)).commit();
+	}
+
+	/**
+	 * Count a start of the save of sessionId.
+	 *
+	 * @return the number of starts so far, this one included.
+	 */
+	private int countAttempt(final long sessionId) {
+		final SharedPreferences prefs = getPreferences();
+		final String key = getPendingKey(sessionId, KEY_ATTEMPTS);
+		final int attempt = prefs.getInt(key, 0) + 1;
+		prefs.edit().putInt(key, attempt).commit();
+		return attempt;
+	}
+
+	private void forget(final long sessionId) {
+		getPreferences().edit().remove(KEY_PENDING + sessionId)
+				.remove(getPendingKey(sessionId, KEY_ATTEMPTS))
+				.remove(getPendingKey(sessionId, StartSleepReceiver.EXTRA_ALARM))
+				.remove(getPendingKey(sessionId, SaveSleepReceiver.EXTRA_RATING))
+				.remove(getPendingKey(sessionId, SaveSleepReceiver.EXTRA_NOTE)).commit();
+	}
+
+	/**
+	 * The row already saved for the journal with sessionId, or null.
+	 */
+	private Uri findSaved(final long sessionId) {
+		final Cursor cursor = mContext.getContentResolver().query(SleepSession.CONTENT_URI,
+				new String[] { SleepSession._ID }, SleepSession.JOURNAL_ID + " = ?",
+				new String[] { Long.toString(sessionId) }, null);
+		if (cursor == null) {
+			return null;
+		}
+		try {
+			return cursor.moveToFirst() ? ContentUris.withAppendedId(SleepSession.CONTENT_URI,
+					cursor.getLong(0)) : null;
+		} finally {
+			cursor.close();
+		}
+	}
+
+	private void save(final Intent request, final long requestedSessionId) {
+		final float alarm = request.getFloatExtra(StartSleepReceiver.EXTRA_ALARM,
+				SettingsActivity.DEFAULT_ALARM_SENSITIVITY);
+		final int rating = request.getIntExtra(SaveSleepReceiver.EXTRA_RATING, 5);
+		final String note = request.getStringExtra(SaveSleepReceiver.EXTRA_NOTE);
+
+		final File dataFile = mContext.getFileStreamPath(SleepMonitoringService.SLEEP_DATA);
+		SleepDataJournal.Header header = null;
+		try {
+			if (dataFile.exists()) {
+				// the journal is preallocated; only the header knows how many
+				// points were committed.
+				header = SleepDataJournal.readHeader(dataFile);
+				if (header == null) {
+					forget(requestedSessionId);
+					fail("corrupt file");
+					return;
+				}
+			}
+		} catch (final IOException e) {
+			forget(requestedSessionId);
+			fail(e.getMessage());
+			return;
+		}
+
+		// the journal is gone or belongs to a later night: the requested one
+		// was either saved before the process died or is lost.
+		if (header == null
+				|| (requestedSessionId != UNKNOWN_SESSION && header.sessionId != requestedSessionId)) {
+			final Uri saved = requestedSessionId == UNKNOWN_SESSION ? null
+					: findSaved(requestedSessionId);
+			forget(requestedSessionId);
+			if (saved != null) {
+				succeed(saved);
+			} else {
+				fail(dataFile.getPath());
+			}
+			return;
+		}
+
+		Uri uri = findSaved(header.sessionId);
+		if (uri == null) {
+			try {
+				uri = insert(request, header, alarm, rating, note);
+			} catch (final IOException e) {
+				forget(requestedSessionId);
+				fail(e.getMessage());
+				return;
+			}
+			if (uri == null) {
+				// keep the journal and the request; the next start retries.
+				fail("insert failed");
+				return;
+			}
+		}
+
+		SleepDataJournal.delete(dataFile);
+		forget(requestedSessionId);
+		if (uri == Uri.EMPTY) {
+			// nothing was recorded
+			mContext.sendBroadcast(new Intent(SaveSleepReceiver.SAVE_SLEEP_COMPLETED));
+		} else {
+			succeed(uri);
+		}
+	}
+
+	/**
+	 * Analyze the journal and insert the night.
+	 *
+	 * @return the new row, {@link Uri#EMPTY} if the journal has no points or
+	 *         null if the insert failed.
+	 */
+	private Uri insert(final Intent request, final SleepDataJournal.Header header,
+			final float alarm, final int rating, final String note) throws IOException {
+		final File dataFile = mContext.getFileStreamPath(SleepMonitoringService.SLEEP_DATA);
+		final SleepDataJournal.Records records = SleepDataJournal.mapRecords(dataFile,
+				header.pointCount);
+
+		// the service summarized the night as it went; a retried request or a
+		// journal left behind by a killed process is analyzed here. The
+		// summary is taken when monitoring is stopped, before the recorder has
+		// journaled the last epochs, so it is only used if it has them all.
+		SleepSummary summary = (SleepSummary) request
+				.getSerializableExtra(SleepMonitoringService.EXTRA_SUMMARY);
+		final long sessionId = request.getLongExtra(SleepMonitoringService.EXTRA_SESSION_ID,
+				UNKNOWN_SESSION);
+		if (summary == null || sessionId != header.sessionId
+				|| summary.getEpochCount() != records.countEpochs()) {
+			// decode straight from the mapped file; only the points that will
+			// be stored are kept.
+			final SleepDataAnalyzer analyzer = new SleepDataAnalyzer(alarm,
+					SleepMonitoringService.MAX_POINTS_IN_A_GRAPH);
+			analyzer.analyze(records, Downsamplers.forStorage(alarm));
+			summary = analyzer.getSummary();
+		}
+		if (summary.getPointCount() == 0) {
+			return Uri.EMPTY;
+		}
+
+		final SleepSession session = new SleepSession(summary.getStartTime(),
+				summary.getEndTime(), summary.getData(), SettingsActivity.DEFAULT_MIN_SENSITIVITY,
+				alarm, rating, summary.getDuration(), summary.getSpikes(),
+				summary.getTimeOfFirstSleep(), note);
+		// unlike the summary, these are not kept while monitoring; each is one
+		// pass over the mapped journal on this thread.
+		session.setPyramid(SleepDataPyramid.encode(records));
+		session.setSleepWakeLabels(new SleepWakeScorer(getSleepWakeClassifier(), alarm).score(
+				records, summary.getStartTime()));
+		session.setSleepCycleBoundaries(new SleepCycleDetector().detect(records,
+				summary.getStartTime()));
+
+		final ContentValues values = session.toContentValues();
+		values.put(SleepSession.JOURNAL_ID, header.sessionId);
+
+		// the session, its data and its fingerprint are written in one
+		// transaction; the rows after the first take its id.
+		final ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>(
+				3);
+		operations.add(ContentProviderOperation.newInsert(SleepSession.CONTENT_URI)
+				.withValues(values).build());
+		operations.add(ContentProviderOperation.newInsert(SleepSessionData.CONTENT_URI)
+				.withValues(session.toDataContentValues())
+				.withValueBackReference(SleepSessionData.SESSION_ID, 0).build());
+		// fingerprinted from the stored points, like sessions saved before
+		// fingerprints were.
+		operations.add(ContentProviderOperation.newInsert(SleepFingerprint.CONTENT_URI)
+				.withValues(SleepFingerprint.toContentValues(new PointListSource(summary.getData())))
+				.withValueBackReference(SleepFingerprint.SESSION_ID, 0).build());
+		try {
+			return mContext.getContentResolver()
+					.applyBatch(ElectricSleepProvider.CONTENT_AUTHORITY, operations)[0].uri;
+		} catch (final RemoteException e) {
+			Log.w(TAG, "Could not insert the night: " + e.getMessage());
+		} catch (final OperationApplicationException e) {
+			Log.w(TAG, "Could not insert the night: " + e.getMessage());
+		}
+		return null;
+	}
+
+	/**
+	 * The classifier picked in the settings, Cole-Kripke unless it is Sadeh.
+	 */
+	private SleepWakeClassifier getSleepWakeClassifier() {
+		final String scorer = mContext.getSharedPreferences(SettingsActivity.PREFERENCES, 0)
+				.getString(mContext.getString(R.string.pref_sleep_wake_scorer), null);
+		if (SettingsActivity.SLEEP_WAKE_SCORER_SADEH.equals(scorer)) {
+			return new SadehClassifier();
+		}
+		return new ColeKripkeClassifier();
+	}
+
+	private void fail(final String message) {
+		mContext.sendBroadcast(new Intent(SaveSleepReceiver.SAVE_SLEEP_COMPLETED).putExtra(
+				SaveSleepReceiver.EXTRA_IO_EXCEPTION, message));
+	}
+
+	private void succeed(final Uri uri) {
+		final Intent saveSleepCompletedIntent = new Intent(SaveSleepReceiver.SAVE_SLEEP_COMPLETED);
+		saveSleepCompletedIntent.putExtra(SaveSleepReceiver.EXTRA_SUCCESS, true);
+		saveSleepCompletedIntent.putExtra(SaveSleepReceiver.EXTRA_URI, uri.toString());
+		mContext.sendBroadcast(saveSleepCompletedIntent);
+	}
+}
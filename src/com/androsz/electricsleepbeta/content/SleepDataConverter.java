@@ -0,0 +1,173 @@
+package com.androsz.electricsleepbeta.content;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.Log;
+
+import com.androsz.electricsleepbeta.analysis.PointListSource;
+import com.androsz.electricsleepbeta.db.ElectricSleepProvider;
+import com.androsz.electricsleepbeta.db.SleepDataCodec;
+import com.androsz.electricsleepbeta.db.SleepFingerprint;
+import com.androsz.electricsleepbeta.db.SleepSession;
+import com.androsz.electricsleepbeta.db.SleepSessionData;
+import com.androsz.electricsleepbeta.util.PointD;
+
+/**
+ * Brings the data of sessions saved by older versions up to date, a page of
+ * rows per transaction on a background thread:
+ * <ul>
+ * <li>rewrites data saved as a serialized list in the {@link SleepDataCodec}
+ * form;</li>
+ * <li>fills in the point count and preview of sessions that were saved before
+ * those columns existed;</li>
+ * <li>fingerprints sessions that were saved before fingerprints were kept.</li>
+ * </ul>
+ * Sessions read the old forms and do without the missing columns, so the work
+ * can take its time and is simply started again on the next launch if the
+ * process dies or the provider cannot be reached. Once every pass finds no row
+ * left it is not started again, until a pass is added.
+ */
+public final class SleepDataConverter {
+
+	private static final String TAG = SleepDataConverter.class.getSimpleName();
+
+	private static final String PREFERENCES = "sleepDataConverter";
+	private static final String KEY_VERSION = "version";
+
+	/** Raised whenever a pass is added, so that it also runs where the others are done. */
+	private static final int VERSION = 3;
+
+	/** Rows converted together. */
+	private static final int PAGE_SIZE = 32;
+
+	/** A serialized object starts with the stream magic 0xACED. */
+	private static final String SERIALIZED = "hex(substr(" + SleepSessionData.DATA
+			+ ", 1, 2)) = 'ACED'";
+
+	/**
+	 * One kind of row to bring up to date: the data rows it selects and the
+	 * operation that updates each of them.
+	 */
+	private static abstract class Pass {
+		final String name;
+		final String selection;
+
+		Pass(final String name, final String selection) {
+			this.name = name;
+			this.selection = selection;
+		}
+
+		abstract ContentProviderOperation update(long sessionId, List<PointD> data)
+				throws Exception;
+	}
+
+	private static final Pass[] PASSES = { new Pass("data", SERIALIZED) {
+		@Override
+		ContentProviderOperation update(final long sessionId, final List<PointD> data) {
+			return ContentProviderOperation.newUpdate(SleepSessionData.buildUri(sessionId))
+					.withValue(SleepSessionData.DATA, SleepDataCodec.encode(data)).build();
+		}
+	}, new Pass("point count and preview", SleepSessionData.SESSION_ID + " IN (SELECT "
+			+ SleepSession._ID + " FROM " + SleepSession.PATH + " WHERE "
+			+ SleepSession.POINT_COUNT + " IS NULL OR " + SleepSession.PREVIEW + " IS NULL)") {
+		@Override
+		ContentProviderOperation update(final long sessionId, final List<PointD> data) {
+			return ContentProviderOperation
+					.newUpdate(ContentUris.withAppendedId(SleepSession.CONTENT_URI, sessionId))
+					.withValue(SleepSession.POINT_COUNT, data.size())
+					.withValue(SleepSession.PREVIEW, SleepSession.encodePreview(data)).build();
+		}
+	}, new Pass("fingerprint", SleepSessionData.SESSION_ID + " NOT IN (SELECT "
+			+ SleepFingerprint.SESSION_ID + " FROM " + SleepFingerprint.PATH + ")") {
+		@Override
+		ContentProviderOperation update(final long sessionId, final List<PointD> data) {
+			return ContentProviderOperation.newInsert(SleepFingerprint.CONTENT_URI)
+					.withValues(SleepFingerprint.toContentValues(sessionId,
+							new PointListSource(data))).build();
+		}
+	} };
+
+	private static boolean sStarted;
+
+	/**
+	 * Convert the remaining rows, unless that is done or already under way.
+	 */
+	public static synchronized void start(final Context context) {
+		final SharedPreferences prefs = context.getSharedPreferences(PREFERENCES,
+				Context.MODE_PRIVATE);
+		if (sStarted || prefs.getInt(KEY_VERSION, 0) >= VERSION) {
+			return;
+		}
+		sStarted = true;
+
+		final ContentResolver resolver = context.getContentResolver();
+		final HandlerThread thread = new HandlerThread(TAG,
+				Process.THREAD_PRIORITY_BACKGROUND);
+		thread.start();
+		new Handler(thread.getLooper()).post(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					for (final Pass pass : PASSES) {
+						convert(resolver, pass);
+					}
+					prefs.edit().putInt(KEY_VERSION, VERSION).commit();
+				} catch (final Exception e) {
+					Log.w(TAG, "Sleep data conversion stopped: " + e.getMessage());
+				} finally {
+					thread.quit();
+				}
+			}
+		});
+	}
+
+	private static void convert(final ContentResolver resolver, final Pass pass)
+			throws Exception {
+		// rows that cannot be read stay as they are; skip past them.
+		long lastId = 0;
+		int converted = 0;
+		while (true) {
+			final ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>(
+					PAGE_SIZE);
+			final Cursor cursor = resolver.query(SleepSessionData.CONTENT_URI,
+					SleepSessionData.PROJECTION, SleepSessionData.SESSION_ID + " > ? AND "
+							+ pass.selection, new String[] { Long.toString(lastId) },
+					SleepSessionData.SESSION_ID + " ASC LIMIT " + PAGE_SIZE);
+			if (cursor == null) {
+				throw new IllegalStateException("Sleep data could not be queried.");
+			}
+			try {
+				if (!cursor.moveToFirst()) {
+					break;
+				}
+				do {
+					lastId = cursor.getLong(0);
+					try {
+						operations.add(pass.update(lastId,
+								SleepSession.decodeData(cursor.getBlob(1))));
+					} catch (final Exception e) {
+						Log.w(TAG, "Skipping session " + lastId + " with unreadable data.");
+					}
+				} while (cursor.moveToNext());
+			} finally {
+				cursor.close();
+			}
+			resolver.applyBatch(ElectricSleepProvider.CONTENT_AUTHORITY, operations);
+			converted += operations.size();
+		}
+		Log.d(TAG, "Converted the " + pass.name + " of " + converted + " sessions.");
+	}
+
+	private SleepDataConverter() {
+	}
+}
@@ -39,7 +39,7 @@ public class ElectricSleepDatabase extends SQLiteOpenHelper {
     private static final String TAG = ElectricSleepDatabase.class.getSimpleName();
 
     private static final String DB_NAME = "sleephistory";
-    private static final int DB_VERSION = 7;
+    private static final int DB_VERSION = 15;
 
     public ElectricSleepDatabase(Context context) {
         super(context, DB_NAME, null, DB_VERSION);
@@ -56,15 +56,23 @@ public class ElectricSleepDatabase extends SQLiteOpenHelper {
             SleepSession.START_TIMESTAMP + " INTEGER NOT NULL," +
             SleepSession.START_JULIAN_DAY + " INTEGER NOT NULL," +
             SleepSession.END_TIMESTAMP + " INTEGER NOT NULL," +
-            SleepSession.DATA + " BLOB," +
             SleepSession.RATING + " INTEGER," +
             SleepSession.SPIKES + " INTEGER," +
             SleepSession.FELL_ASLEEP_TIMESTAMP + " INTEGER," +
             SleepSession.DURATION + " INTEGER," +
             SleepSession.CALIBRATION_LEVEL + " REAL," +
             SleepSession.MIN + " REAL," +
-            SleepSession.NOTE + " TEXT" +
+            SleepSession.NOTE + " TEXT," +
+            SleepSession.SLEEP_WAKE + " BLOB," +
+            SleepSession.JOURNAL_ID + " INTEGER," +
+            SleepSession.SLEEP_CYCLES + " BLOB," +
+            SleepSession.POINT_COUNT + " INTEGER," +
+            SleepSession.PREVIEW + " BLOB" +
             ")");
+        createJournalIdIndex(db);
+        createFingerprintTable(db);
+        createSessionDataTable(db);
+        createStartIndexes(db);
     }
 
     @Override
@@ -78,6 +86,46 @@ public class ElectricSleepDatabase extends SQLiteOpenHelper {
             upgradeToVersion7(db);
             ++oldVersion;
         }
+
+        if (oldVersion == 7) {
+            upgradeToVersion8(db);
+            ++oldVersion;
+        }
+
+        if (oldVersion == 8) {
+            upgradeToVersion9(db);
+            ++oldVersion;
+        }
+
+        if (oldVersion == 9) {
+            upgradeToVersion10(db);
+            ++oldVersion;
+        }
+
+        if (oldVersion == 10) {
+            upgradeToVersion11(db);
+            ++oldVersion;
+        }
+
+        if (oldVersion == 11) {
+            upgradeToVersion12(db);
+            ++oldVersion;
+        }
+
+        if (oldVersion == 12) {
+            upgradeToVersion13(db);
+            ++oldVersion;
+        }
+
+        if (oldVersion == 13) {
+            upgradeToVersion14(db);
+            ++oldVersion;
+        }
+
+        if (oldVersion == 14) {
+            upgradeToVersion15(db);
+            ++oldVersion;
+        }
     }
 
     private void upgradeToVersion6(SQLiteDatabase db) {
@@ -184,5 +232,146 @@ public class ElectricSleepDatabase extends SQLiteOpenHelper {
             } while (cursor.moveToNext());
         }
     }
+
+    /**
+     * Upgrade to version 8 includes adding the sleep data pyramid. Existing
+     * sessions only kept their downsampled data, so they are left without one.
+     */
+    private void upgradeToVersion8(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + SleepSession.PATH + " ADD COLUMN " +
+                   SleepSession.PYRAMID + " BLOB;");
+    }
+
+    /**
+     * Upgrade to version 9 includes adding per minute sleep/wake labels.
+     */
+    private void upgradeToVersion9(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + SleepSession.PATH + " ADD COLUMN " +
+                   SleepSession.SLEEP_WAKE + " BLOB;");
+    }
+
+    /**
+     * Upgrade to version 10 includes adding the id of the journal a session
+     * was saved from, so a retried save can tell it already happened.
+     */
+    private void upgradeToVersion10(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + SleepSession.PATH + " ADD COLUMN " +
+                   SleepSession.JOURNAL_ID + " INTEGER;");
+        createJournalIdIndex(db);
+    }
+
+    /**
+     * Upgrade to version 11 includes adding the sleep cycle boundaries.
+     */
+    private void upgradeToVersion11(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + SleepSession.PATH + " ADD COLUMN " +
+                   SleepSession.SLEEP_CYCLES + " BLOB;");
+    }
+
+    /**
+     * Upgrade to version 12 includes adding the movement fingerprints of
+     * sessions. Existing sessions are fingerprinted later by
+     * SleepDataConverter.
+     */
+    private void upgradeToVersion12(SQLiteDatabase db) {
+        createFingerprintTable(db);
+    }
+
+    /**
+     * Upgrade to version 13 includes moving the data and pyramid of sessions
+     * to their own table and keeping the number of stored points with the
+     * session. The blobs are copied as they are; the point counts of existing
+     * sessions are filled in later by SleepDataConverter. The old
+     * columns are emptied, since SQLite cannot drop them.
+     */
+    private void upgradeToVersion13(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + SleepSession.PATH + " ADD COLUMN " +
+                   SleepSession.POINT_COUNT + " INTEGER;");
+        createSessionDataTable(db);
+
+        db.execSQL("INSERT INTO " + SleepSessionData.PATH + " (" +
+                   SleepSessionData.SESSION_ID + ", " + SleepSessionData.DATA + ", " +
+                   SleepSessionData.PYRAMID + ") SELECT " + SleepSession._ID + ", " +
+                   SleepSession.DATA + ", " + SleepSession.PYRAMID + " FROM " +
+                   SleepSession.PATH + ";");
+
+        final ContentValues empty = new ContentValues(2);
+        empty.putNull(SleepSession.DATA);
+        empty.putNull(SleepSession.PYRAMID);
+        db.update(SleepSession.PATH, empty, null, null);
+    }
+
+    /**
+     * The session data table and the trigger that deletes a session's data
+     * with the session.
+     */
+    private void createSessionDataTable(SQLiteDatabase db) {
+        db.execSQL(
+            "CREATE TABLE " + SleepSessionData.PATH + " (" +
+            SleepSessionData.SESSION_ID + " INTEGER PRIMARY KEY," +
+            SleepSessionData.DATA + " BLOB," +
+            SleepSessionData.PYRAMID + " BLOB" +
+            ")");
+        db.execSQL("CREATE TRIGGER " + SleepSession.PATH + "_delete_data" +
+                   " AFTER DELETE ON " + SleepSession.PATH + " BEGIN" +
+                   " DELETE FROM " + SleepSessionData.PATH +
+                   " WHERE " + SleepSessionData.SESSION_ID + " = old." + SleepSession._ID + ";" +
+                   " END;");
+    }
+
+    /**
+     * The fingerprint table, the index on its words and the trigger that
+     * deletes a session's fingerprint with the session.
+     */
+    private void createFingerprintTable(SQLiteDatabase db) {
+        db.execSQL(
+            "CREATE TABLE " + SleepFingerprint.PATH + " (" +
+            SleepFingerprint.SESSION_ID + " INTEGER PRIMARY KEY," +
+            SleepFingerprint.WORD + " TEXT NOT NULL," +
+            SleepFingerprint.APPROXIMATION + " BLOB NOT NULL" +
+            ")");
+        db.execSQL("CREATE INDEX " + SleepFingerprint.PATH + "_" + SleepFingerprint.WORD +
+                   " ON " + SleepFingerprint.PATH + " (" + SleepFingerprint.WORD + ");");
+        db.execSQL("CREATE TRIGGER " + SleepSession.PATH + "_delete_fingerprint" +
+                   " AFTER DELETE ON " + SleepSession.PATH + " BEGIN" +
+                   " DELETE FROM " + SleepFingerprint.PATH +
+                   " WHERE " + SleepFingerprint.SESSION_ID + " = old." + SleepSession._ID + ";" +
+                   " END;");
+    }
+
+    /**
+     * Upgrade to version 14 includes indexing sessions by when they start.
+     */
+    private void upgradeToVersion14(SQLiteDatabase db) {
+        createStartIndexes(db);
+    }
+
+    /**
+     * Upgrade to version 15 includes keeping a small preview of the data with
+     * each session, so lists draw sessions without reading their data.
+     * Existing sessions get theirs later from SleepDataConverter.
+     */
+    private void upgradeToVersion15(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + SleepSession.PATH + " ADD COLUMN " +
+                   SleepSession.PREVIEW + " BLOB;");
+    }
+
+    /**
+     * The index behind the newest first order and timestamp ranges, and the
+     * one behind julian day ranges. The latter also holds both timestamps, so
+     * the calendar is answered from the index alone.
+     */
+    private void createStartIndexes(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX " + SleepSession.PATH + "_" + SleepSession.START_TIMESTAMP +
+                   " ON " + SleepSession.PATH + " (" + SleepSession.START_TIMESTAMP + ");");
+        db.execSQL("CREATE INDEX " + SleepSession.PATH + "_" + SleepSession.START_JULIAN_DAY +
+                   " ON " + SleepSession.PATH + " (" + SleepSession.START_JULIAN_DAY + ", " +
+                   SleepSession.START_TIMESTAMP + ", " + SleepSession.END_TIMESTAMP + ");");
+    }
+
+    private void createJournalIdIndex(SQLiteDatabase db) {
+        db.execSQL("CREATE UNIQUE INDEX " + SleepSession.PATH + "_" + SleepSession.JOURNAL_ID +
+                   " ON " + SleepSession.PATH + " (" + SleepSession.JOURNAL_ID + ");");
+    }
 }
 
@@ -15,13 +15,17 @@ package com.androsz.electricsleepbeta.db;
 import com.google.android.apps.iosched.util.SelectionBuilder;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
 
+import java.util.ArrayList;
 import java.util.TimeZone;
 
 /**
@@ -45,11 +49,36 @@ public class ElectricSleepProvider extends ContentProvider {
 
     private static final int SLEEP_SESSIONS = 100;
     private static final int SLEEP_SESSIONS_ID = 101;
+    private static final int SLEEP_SESSIONS_JULIAN = 102;
+    private static final int SLEEP_SESSIONS_TIMESTAMP = 103;
+
+    private static final int SLEEP_FINGERPRINTS = 200;
+
+    private static final int SLEEP_SESSION_DATA = 300;
+    private static final int SLEEP_SESSION_DATA_ID = 301;
 
     private static final UriMatcher URI_MATCHER = buildUriMatcher();
 
     private ElectricSleepDatabase mOpenHelper;
 
+    /**
+     * Apply all operations in a single transaction, so a batch is written at
+     * once and either completely or not at all.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            final ContentProviderResult[] results = super.applyBatch(operations);
+            db.setTransactionSuccessful();
+            return results;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
     @Override
     public int delete(Uri uri, String selection, String[] selectionArgs) {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
@@ -68,9 +97,17 @@ public class ElectricSleepProvider extends ContentProvider {
         final int match = URI_MATCHER.match(uri);
         switch (match) {
         case SLEEP_SESSIONS:
+        case SLEEP_SESSIONS_JULIAN:
+        case SLEEP_SESSIONS_TIMESTAMP:
             return SleepSession.CONTENT_TYPE;
         case SLEEP_SESSIONS_ID:
             return SleepSession.CONTENT_ITEM_TYPE;
+        case SLEEP_FINGERPRINTS:
+            return SleepFingerprint.CONTENT_TYPE;
+        case SLEEP_SESSION_DATA:
+            return SleepSessionData.CONTENT_TYPE;
+        case SLEEP_SESSION_DATA_ID:
+            return SleepSessionData.CONTENT_ITEM_TYPE;
         default:
             throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
@@ -82,14 +119,13 @@ public class ElectricSleepProvider extends ContentProvider {
             return null;
         }
 
-        final long currentTimestamp = System.currentTimeMillis();
-        values.put(TimestampColumns.CREATED_ON, currentTimestamp);
-        values.put(TimestampColumns.UPDATED_ON, currentTimestamp);
-
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = URI_MATCHER.match(uri);
         switch (match) {
         case SLEEP_SESSIONS:
+            final long currentTimestamp = System.currentTimeMillis();
+            values.put(TimestampColumns.CREATED_ON, currentTimestamp);
+            values.put(TimestampColumns.UPDATED_ON, currentTimestamp);
             values.put(SleepSession.TIMEZONE, TimeZone.getDefault().getID());
             final long id = db.insert(SleepSession.PATH, null, values);
             if (id == -1) {
@@ -97,6 +133,19 @@ public class ElectricSleepProvider extends ContentProvider {
             }
             notifyChange(uri);
             return ContentUris.withAppendedId(SleepSession.CONTENT_URI, id);
+        case SLEEP_FINGERPRINTS:
+            // a session has one fingerprint; saving it again replaces it.
+            if (db.replace(SleepFingerprint.PATH, null, values) == -1) {
+                return null;
+            }
+            return uri;
+        case SLEEP_SESSION_DATA:
+            // a session has one data row; saving it again replaces it.
+            if (db.replace(SleepSessionData.PATH, null, values) == -1) {
+                return null;
+            }
+            notifyChange(uri);
+            return SleepSessionData.buildUri(values.getAsLong(SleepSessionData.SESSION_ID));
         default:
             throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
@@ -132,6 +181,24 @@ public class ElectricSleepProvider extends ContentProvider {
 
             c.setNotificationUri(getContext().getContentResolver(), uri);
             return c;
+        case SLEEP_SESSIONS_JULIAN:
+        case SLEEP_SESSIONS_TIMESTAMP:
+            final Cursor range = builder.where(selection, selectionArgs).query(db,
+                    projection == null ? SleepSession.PROJECTION : projection,
+                    sortOrder == null ? SleepSession.DEFAULT_SORT_ORDER : sortOrder);
+            // any change to a session may move it into or out of the range.
+            range.setNotificationUri(getContext().getContentResolver(),
+                    SleepSession.CONTENT_URI);
+            return range;
+        case SLEEP_FINGERPRINTS:
+            return builder.where(selection, selectionArgs).query(db,
+                    projection == null ? SleepFingerprint.PROJECTION : projection, sortOrder);
+        case SLEEP_SESSION_DATA:
+        case SLEEP_SESSION_DATA_ID:
+            final Cursor data = builder.where(selection, selectionArgs).query(db,
+                    projection == null ? SleepSessionData.PROJECTION : projection, sortOrder);
+            data.setNotificationUri(getContext().getContentResolver(), uri);
+            return data;
         }
         return null;
     }
@@ -140,18 +207,22 @@ public class ElectricSleepProvider extends ContentProvider {
     public int update(Uri uri, ContentValues values, String selection,
             String[] selectionArgs) {
 
-        final long updateTimestamp = System.currentTimeMillis();
-        values.put(TimestampColumns.UPDATED_ON, updateTimestamp);
+        final int match = URI_MATCHER.match(uri);
+        if (match == SLEEP_SESSIONS || match == SLEEP_SESSIONS_ID) {
+            final long updateTimestamp = System.currentTimeMillis();
+            values.put(TimestampColumns.UPDATED_ON, updateTimestamp);
+        }
 
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final SelectionBuilder builder = buildSimpleSelection(uri, "");
         final int count = builder.where(selection, selectionArgs).update(db,
                 values);
 
-        final int match = URI_MATCHER.match(uri);
         switch (match) {
         case SLEEP_SESSIONS:
         case SLEEP_SESSIONS_ID:
+        case SLEEP_SESSION_DATA:
+        case SLEEP_SESSION_DATA_ID:
             notifyChange(uri);
         }
         return count;
@@ -169,6 +240,22 @@ public class ElectricSleepProvider extends ContentProvider {
             return builder.table(SleepSession.PATH).where(
                     SleepSession._ID + "=?",
                     Long.toString(ContentUris.parseId(uri)));
+        case SLEEP_SESSIONS_JULIAN:
+            return builder.table(SleepSession.PATH)
+                    .where(SleepSession.START_JULIAN_DAY + ">=?", uri.getPathSegments().get(2))
+                    .where(SleepSession.START_JULIAN_DAY + "<=?", uri.getPathSegments().get(3));
+        case SLEEP_SESSIONS_TIMESTAMP:
+            return builder.table(SleepSession.PATH)
+                    .where(SleepSession.START_TIMESTAMP + ">=?", uri.getPathSegments().get(2))
+                    .where(SleepSession.START_TIMESTAMP + "<?", uri.getPathSegments().get(3));
+        case SLEEP_FINGERPRINTS:
+            return builder.table(SleepFingerprint.PATH);
+        case SLEEP_SESSION_DATA:
+            return builder.table(SleepSessionData.PATH);
+        case SLEEP_SESSION_DATA_ID:
+            return builder.table(SleepSessionData.PATH).where(
+                    SleepSessionData.SESSION_ID + "=?",
+                    Long.toString(ContentUris.parseId(uri)));
         }
         throw new UnsupportedOperationException("Unkown uri: " + uri);
     }
@@ -179,6 +266,13 @@ public class ElectricSleepProvider extends ContentProvider {
 
         matcher.addURI(authority, SleepSession.PATH, SLEEP_SESSIONS);
         matcher.addURI(authority, SleepSession.PATH + "/#", SLEEP_SESSIONS_ID);
+        matcher.addURI(authority, SleepSession.PATH + "/" + SleepSession.PATH_JULIAN + "/#/#",
+                SLEEP_SESSIONS_JULIAN);
+        matcher.addURI(authority, SleepSession.PATH + "/" + SleepSession.PATH_TIMESTAMP + "/#/#",
+                SLEEP_SESSIONS_TIMESTAMP);
+        matcher.addURI(authority, SleepFingerprint.PATH, SLEEP_FINGERPRINTS);
+        matcher.addURI(authority, SleepSessionData.PATH, SLEEP_SESSION_DATA);
+        matcher.addURI(authority, SleepSessionData.PATH + "/#", SLEEP_SESSION_DATA_ID);
         return matcher;
     }
 }
@@ -0,0 +1,225 @@
+package com.androsz.electricsleepbeta.db;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.androsz.electricsleepbeta.analysis.XYSource;
+import com.androsz.electricsleepbeta.util.PointD;
+
+/**
+ * The stored form of a session's points, replacing a serialized
+ * List&lt;PointD&gt;.
+ *
+ * After a two byte magic and a version come the scale of the values and the
+ * point count, then the x values as whole milliseconds, the first one itself
+ * and every other one as the change of the step from the one before it, then
+ * the y values as multiples of 1/scale. Every number is a zigzag varint, so the
+ * regular steps of a night and its small values take a byte or two each. A
+ * gap's y is stored as a single reserved value.
+ */
+public final class SleepDataCodec {
+
+	/**
+	 * Decoded points. The arrays may be longer than {@link #size()}.
+	 */
+	public static final class Points implements XYSource {
+		public final double[] x;
+		public final float[] y;
+		private final int mSize;
+
+		Points(final double[] x, final float[] y, final int size) {
+			this.x = x;
+			this.y = y;
+			mSize = size;
+		}
+
+		@Override
+		public int size() {
+			return mSize;
+		}
+
+		@Override
+		public double getX(final int index) {
+			return x[index];
+		}
+
+		@Override
+		public double getY(final int index) {
+			return y[index];
+		}
+
+		/**
+		 * A new list of the points.
+		 */
+		public List<PointD> toList() {
+			final ArrayList<PointD> points = new ArrayList<PointD>(mSize);
+			for (int i = 0; i < mSize; i++) {
+				points.add(new PointD(x[i], y[i]));
+			}
+			return points;
+		}
+	}
+
+	// a serialized object starts 0xACED, so the two cannot be confused.
+	private static final byte MAGIC_0 = 'E';
+	private static final byte MAGIC_1 = 'S';
+	private static final int VERSION = 1;
+
+	/** Values are kept to a ten thousandth. */
+	private static final int SCALE = 10000;
+
+	/** The stored y of a gap; a value is stored shifted left by one. */
+	private static final long GAP = 1;
+
+	private static final int MAX_VARINT_SIZE = 10;
+
+	public static byte[] encode(final List<PointD> points) {
+		final int count = points.size();
+		final double[] x = new double[count];
+		final float[] y = new float[count];
+		for (int i = 0; i < count; i++) {
+			final PointD point = points.get(i);
+			x[i] = point.x;
+			y[i] = (float) point.y;
+		}
+		return encode(x, y, count);
+	}
+
+	/**
+	 * Encode the first count points of x and y. x is rounded to whole
+	 * milliseconds.
+	 */
+	public static byte[] encode(final double[] x, final float[] y, final int count) {
+		final byte[] buffer = new byte[3 + 3 * MAX_VARINT_SIZE + count * 2 * MAX_VARINT_SIZE];
+		buffer[0] = MAGIC_0;
+		buffer[1] = MAGIC_1;
+		buffer[2] = VERSION;
+		int position = 3;
+		position = putVarint(buffer, position, SCALE);
+		position = putVarint(buffer, position, count);
+
+		long previous = 0;
+		long previousStep = 0;
+		for (int i = 0; i < count; i++) {
+			final long time = Math.round(x[i]);
+			if (i == 0) {
+				position = putVarint(buffer, position, zigzag(time));
+			} else {
+				final long step = time - previous;
+				position = putVarint(buffer, position, zigzag(step - previousStep));
+				previousStep = step;
+			}
+			previous = time;
+		}
+		for (int i = 0; i < count; i++) {
+			final long value = Float.isNaN(y[i]) ? GAP : zigzag(Math.round((double) y[i] * SCALE)) << 1;
+			position = putVarint(buffer, position, value);
+		}
+
+		final byte[] encoded = new byte[position];
+		System.arraycopy(buffer, 0, encoded, 0, position);
+		return encoded;
+	}
+
+	/**
+	 * Decode points in this form or, if written before it, a serialized list.
+	 */
+	@SuppressWarnings("unchecked")
+	public static List<PointD> decodeList(final byte[] bytes) throws IOException,
+			ClassNotFoundException {
+		if (isEncoded(bytes)) {
+			return decode(bytes).toList();
+		}
+		final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+		try {
+			return (List<PointD>) in.readObject();
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Whether bytes are in this form rather than a serialized list.
+	 */
+	public static boolean isEncoded(final byte[] bytes) {
+		return bytes != null && bytes.length >= 3 && bytes[0] == MAGIC_0 && bytes[1] == MAGIC_1;
+	}
+
+	/**
+	 * @throws IllegalArgumentException
+	 *             if bytes are not encoded points.
+	 */
+	public static Points decode(final byte[] bytes) {
+		if (!isEncoded(bytes)) {
+			throw new IllegalArgumentException("Not encoded sleep data");
+		}
+		if (bytes[2] != VERSION) {
+			throw new IllegalArgumentException("Unknown sleep data version " + bytes[2]);
+		}
+		final int[] position = { 3 };
+		final long scale = getVarint(bytes, position);
+		final long count = getVarint(bytes, position);
+		// every point takes at least two bytes.
+		if (scale <= 0 || count < 0 || count > (bytes.length - position[0]) / 2) {
+			throw new IllegalArgumentException("Bad sleep data header");
+		}
+
+		final int size = (int) count;
+		final double[] x = new double[size];
+		final float[] y = new float[size];
+		long time = 0;
+		long step = 0;
+		for (int i = 0; i < size; i++) {
+			if (i == 0) {
+				time = unzigzag(getVarint(bytes, position));
+			} else {
+				step += unzigzag(getVarint(bytes, position));
+				time += step;
+			}
+			x[i] = time;
+		}
+		for (int i = 0; i < size; i++) {
+			final long value = getVarint(bytes, position);
+			y[i] = value == GAP ? Float.NaN : (float) ((double) unzigzag(value >>> 1) / scale);
+		}
+		return new Points(x, y, size);
+	}
+
+	private static long getVarint(final byte[] bytes, final int[] position) {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			if (position[0] >= bytes.length) {
+				throw new IllegalArgumentException("Truncated sleep data");
+			}
+			final byte b = bytes[position[0]++];
+			value |= (long) (b & 0x7f) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IllegalArgumentException("Malformed varint in sleep data");
+	}
+
+	private static int putVarint(final byte[] buffer, int position, long value) {
+		while ((value & ~0x7fL) != 0) {
+			buffer[position++] = (byte) ((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		buffer[position++] = (byte) value;
+		return position;
+	}
+
+	private static long unzigzag(final long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	private static long zigzag(final long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	private SleepDataCodec() {
+	}
+}
@@ -0,0 +1,209 @@
+package com.androsz.electricsleepbeta.db;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.androsz.electricsleepbeta.analysis.XYSource;
+import com.androsz.electricsleepbeta.util.GorillaDecoder;
+import com.androsz.electricsleepbeta.util.GorillaEncoder;
+import com.androsz.electricsleepbeta.util.PointD;
+
+/**
+ * A night's points at several resolutions. Level 0 holds every recorded epoch
+ * and each further level halves the one below it, keeping the larger of each
+ * pair at the first pair's x so a spike shows at every zoom. Levels stop once
+ * one has at most {@link #MIN_LEVEL_POINTS} points.
+ *
+ * The encoded form is a version, the number of levels and then, per level, the
+ * length of its {@link GorillaEncoder} block followed by the block, with x as
+ * whole milliseconds and y widened from float. Levels are decoded only when
+ * asked for, so a reader of the coarsest level never touches the full
+ * resolution one. Version 1 pyramids, which stored per level the point count,
+ * the x values as doubles and the y values as floats, are still read.
+ */
+public final class SleepDataPyramid {
+
+	/** Coarsest level size; small enough for a list thumbnail. */
+	public static final int MIN_LEVEL_POINTS = 64;
+
+	private static final int VERSION = 2;
+	private static final int VERSION_UNCOMPRESSED = 1;
+	private static final int POINT_SIZE = 8 + 4;
+
+	/**
+	 * Encode the non-gap points of source as a pyramid. Returns null if source
+	 * has no points.
+	 */
+	public static byte[] encode(final XYSource source) {
+		final int size = source.size();
+		int count = 0;
+		for (int i = 0; i < size; i++) {
+			if (!Double.isNaN(source.getY(i))) {
+				count++;
+			}
+		}
+		if (count == 0) {
+			return null;
+		}
+
+		final double[] x = new double[count];
+		final float[] y = new float[count];
+		for (int i = 0, j = 0; i < size; i++) {
+			final double value = source.getY(i);
+			if (!Double.isNaN(value)) {
+				x[j] = source.getX(i);
+				y[j] = (float) value;
+				j++;
+			}
+		}
+
+		int levels = 1;
+		for (int n = count; n > MIN_LEVEL_POINTS; levels++) {
+			n = (n + 1) / 2;
+		}
+
+		final byte[][] blocks = new byte[levels][];
+		int length = 4 + 4;
+		for (int level = 0; level < levels; level++) {
+			if (level > 0) {
+				// halve in place; the previous level is already written.
+				final int halved = (count + 1) / 2;
+				for (int i = 0; i < halved; i++) {
+					final int first = i * 2;
+					x[i] = x[first];
+					y[i] = first + 1 < count ? Math.max(y[first], y[first + 1]) : y[first];
+				}
+				count = halved;
+			}
+			final GorillaEncoder encoder = new GorillaEncoder(count);
+			for (int i = 0; i < count; i++) {
+				encoder.add(Math.round(x[i]), y[i]);
+			}
+			blocks[level] = encoder.toByteArray();
+			length += 4 + blocks[level].length;
+		}
+
+		final ByteBuffer buffer = ByteBuffer.allocate(length);
+		buffer.putInt(VERSION);
+		buffer.putInt(levels);
+		for (final byte[] block : blocks) {
+			buffer.putInt(block.length);
+			buffer.put(block);
+		}
+		return buffer.array();
+	}
+
+	private final ByteBuffer mBuffer;
+	private final boolean mCompressed;
+	private final int[] mOffsets;
+	private final int[] mCounts;
+	private final ArrayList<List<PointD>> mLevels;
+
+	/**
+	 * @throws IllegalArgumentException
+	 *             if bytes is not an encoded pyramid.
+	 */
+	public SleepDataPyramid(final byte[] bytes) {
+		mBuffer = ByteBuffer.wrap(bytes);
+		try {
+			final int version = mBuffer.getInt();
+			if (version != VERSION && version != VERSION_UNCOMPRESSED) {
+				throw new IllegalArgumentException("Unknown pyramid version " + version);
+			}
+			mCompressed = version == VERSION;
+			final int levels = mBuffer.getInt();
+			if (levels < 1 || levels > 32) {
+				throw new IllegalArgumentException("Bad pyramid level count " + levels);
+			}
+			mOffsets = new int[levels];
+			mCounts = new int[levels];
+			for (int level = 0; level < levels; level++) {
+				if (mCompressed) {
+					final int length = mBuffer.getInt();
+					if (length < 4 || length > mBuffer.remaining()) {
+						throw new IllegalArgumentException("Truncated pyramid");
+					}
+					mOffsets[level] = mBuffer.position();
+					mCounts[level] = new GorillaDecoder(block(level, length)).size();
+					mBuffer.position(mBuffer.position() + length);
+				} else {
+					final int count = mBuffer.getInt();
+					if (count < 0 || count > mBuffer.remaining() / POINT_SIZE) {
+						throw new IllegalArgumentException("Truncated pyramid");
+					}
+					mOffsets[level] = mBuffer.position();
+					mCounts[level] = count;
+					mBuffer.position(mBuffer.position() + count * POINT_SIZE);
+				}
+			}
+		} catch (final BufferUnderflowException e) {
+			throw new IllegalArgumentException("Truncated pyramid");
+		}
+		mLevels = new ArrayList<List<PointD>>(mOffsets.length);
+		for (int level = 0; level < mOffsets.length; level++) {
+			mLevels.add(null);
+		}
+	}
+
+	public int getLevelCount() {
+		return mOffsets.length;
+	}
+
+	public int getPointCount(final int level) {
+		return mCounts[level];
+	}
+
+	/**
+	 * The points of level, where level 0 is full resolution and every level
+	 * after it has half as many points.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the level's block is corrupt.
+	 */
+	public synchronized List<PointD> getLevel(final int level) {
+		List<PointD> points = mLevels.get(level);
+		if (points == null && mCompressed) {
+			final int end = level + 1 < mOffsets.length ? mOffsets[level + 1] - 4 : mBuffer.limit();
+			final GorillaDecoder decoder = new GorillaDecoder(block(level, end - mOffsets[level]));
+			points = new ArrayList<PointD>(decoder.size());
+			while (decoder.next()) {
+				points.add(new PointD(decoder.getTimestamp(), decoder.getValue()));
+			}
+			mLevels.set(level, points);
+		} else if (points == null) {
+			final int count = mCounts[level];
+			final int yOffset = mOffsets[level] + count * 8;
+			points = new ArrayList<PointD>(count);
+			for (int i = 0; i < count; i++) {
+				points.add(new PointD(mBuffer.getDouble(mOffsets[level] + i * 8), mBuffer
+						.getFloat(yOffset + i * 4)));
+			}
+			mLevels.set(level, points);
+		}
+		return points;
+	}
+
+	/**
+	 * A view of the length bytes of level's block.
+	 */
+	private ByteBuffer block(final int level, final int length) {
+		final ByteBuffer block = mBuffer.duplicate();
+		block.position(mOffsets[level]);
+		block.limit(mOffsets[level] + length);
+		return block.slice();
+	}
+
+	/**
+	 * The finest level with at most maxPoints points, or the coarsest level if
+	 * none is that small.
+	 */
+	public List<PointD> getLevelFor(final int maxPoints) {
+		int level = 0;
+		while (level < mCounts.length - 1 && mCounts[level] > maxPoints) {
+			level++;
+		}
+		return getLevel(level);
+	}
+}
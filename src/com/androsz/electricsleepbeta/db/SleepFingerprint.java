@@ -0,0 +1,191 @@
+package com.androsz.electricsleepbeta.db;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+
+import com.androsz.electricsleepbeta.analysis.NightFingerprinter;
+import com.androsz.electricsleepbeta.analysis.XYSource;
+
+/**
+ * The movement fingerprint of a saved session, kept in its own table so
+ * similar nights can be found without reading every session's data.
+ *
+ * A row holds the session's {@link NightFingerprinter} approximation and its
+ * SAX word, which is indexed. Similar nights are those whose word is close to
+ * this night's, ranked by the warping distance of their approximations. Rows
+ * go away with their session.
+ */
+public final class SleepFingerprint {
+
+	public static final String PATH = "sleep_fingerprints";
+
+	public static final Uri CONTENT_URI = ElectricSleepProvider.BASE_CONTENT_URI
+			.buildUpon().appendPath(PATH).build();
+
+	public static final String CONTENT_TYPE = "vnd.android.cursor.dir/vnd.androsz.electricsleepbeta."
+			+ PATH;
+
+	/** The {@link SleepSession} _ID the fingerprint belongs to. */
+	public static final String SESSION_ID = "session_id";
+
+	/** The SAX word of the approximation. */
+	public static final String WORD = "word";
+
+	/** The approximation, as floats. */
+	public static final String APPROXIMATION = "approximation";
+
+	static final String[] PROJECTION = new String[] { SESSION_ID, WORD, APPROXIMATION };
+
+	/**
+	 * Candidates with fewer words than this widen the search from one letter
+	 * off to every letter off by one.
+	 */
+	private static final int MIN_CANDIDATES = 8;
+
+	/**
+	 * The values of the fingerprint row of sessionId, whose points are source.
+	 */
+	public static ContentValues toContentValues(final long sessionId, final XYSource source) {
+		final ContentValues values = toContentValues(source);
+		values.put(SESSION_ID, sessionId);
+		return values;
+	}
+
+	/**
+	 * The values of a fingerprint row without its session id, for a batch
+	 * that takes the id from the session's insert.
+	 */
+	public static ContentValues toContentValues(final XYSource source) {
+		final float[] approximation = NightFingerprinter.approximate(source);
+		final ContentValues values = new ContentValues(3);
+		values.put(WORD, NightFingerprinter.word(approximation));
+		values.put(APPROXIMATION, encode(approximation));
+		return values;
+	}
+
+	/**
+	 * Up to limit ids of the sessions most similar to sessionId, most similar
+	 * first. Empty if sessionId has no fingerprint.
+	 */
+	public static List<Long> findSimilar(final ContentResolver resolver, final long sessionId,
+			final int limit) {
+		final ArrayList<Long> result = new ArrayList<Long>();
+		String word = null;
+		float[] approximation = null;
+		Cursor cursor = resolver.query(CONTENT_URI, PROJECTION, SESSION_ID + " =?",
+				new String[] { Long.toString(sessionId) }, null);
+		if (cursor == null) {
+			return result;
+		}
+		try {
+			if (cursor.moveToFirst()) {
+				word = cursor.getString(1);
+				approximation = decode(cursor.getBlob(2));
+			}
+		} finally {
+			cursor.close();
+		}
+		if (approximation == null) {
+			return result;
+		}
+
+		List<Candidate> candidates = query(resolver, sessionId, oneLetterOff(word), approximation);
+		if (candidates.size() < Math.max(limit, MIN_CANDIDATES)) {
+			candidates = query(resolver, sessionId, NightFingerprinter.neighbours(word, 1),
+					approximation);
+		}
+		Collections.sort(candidates, new Comparator<Candidate>() {
+			@Override
+			public int compare(final Candidate lhs, final Candidate rhs) {
+				return Double.compare(lhs.distance, rhs.distance);
+			}
+		});
+		for (int i = 0; i < candidates.size() && i < limit; i++) {
+			result.add(candidates.get(i).sessionId);
+		}
+		return result;
+	}
+
+	static byte[] encode(final float[] approximation) {
+		final ByteBuffer buffer = ByteBuffer.allocate(approximation.length * 4);
+		buffer.asFloatBuffer().put(approximation);
+		return buffer.array();
+	}
+
+	static float[] decode(final byte[] bytes) {
+		final float[] approximation = new float[bytes.length / 4];
+		ByteBuffer.wrap(bytes).asFloatBuffer().get(approximation);
+		return approximation;
+	}
+
+	/**
+	 * word and the words differing from it by one in a single letter.
+	 */
+	private static String[] oneLetterOff(final String word) {
+		final ArrayList<String> words = new ArrayList<String>();
+		for (final String neighbour : NightFingerprinter.neighbours(word, 1)) {
+			int differences = 0;
+			for (int i = 0; i < word.length(); i++) {
+				if (word.charAt(i) != neighbour.charAt(i)) {
+					differences++;
+				}
+			}
+			if (differences <= 1) {
+				words.add(neighbour);
+			}
+		}
+		return words.toArray(new String[words.size()]);
+	}
+
+	private static List<Candidate> query(final ContentResolver resolver, final long sessionId,
+			final String[] words, final float[] approximation) {
+		final ArrayList<Candidate> candidates = new ArrayList<Candidate>();
+		final StringBuilder selection = new StringBuilder(SESSION_ID + " !=? AND " + WORD + " IN (");
+		final String[] selectionArgs = new String[words.length + 1];
+		selectionArgs[0] = Long.toString(sessionId);
+		for (int i = 0; i < words.length; i++) {
+			selection.append(i == 0 ? "?" : ",?");
+			selectionArgs[i + 1] = words[i];
+		}
+		selection.append(')');
+
+		final Cursor cursor = resolver.query(CONTENT_URI, PROJECTION, selection.toString(),
+				selectionArgs, null);
+		if (cursor == null) {
+			return candidates;
+		}
+		try {
+			while (cursor.moveToNext()) {
+				final float[] other = decode(cursor.getBlob(2));
+				if (other.length == approximation.length) {
+					candidates.add(new Candidate(cursor.getLong(0), NightFingerprinter.distance(
+							approximation, other)));
+				}
+			}
+		} finally {
+			cursor.close();
+		}
+		return candidates;
+	}
+
+	private static final class Candidate {
+		final long sessionId;
+		final double distance;
+
+		Candidate(final long sessionId, final double distance) {
+			this.sessionId = sessionId;
+			this.distance = distance;
+		}
+	}
+
+	private SleepFingerprint() {
+	}
+}
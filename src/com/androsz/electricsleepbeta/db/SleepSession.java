@@ -1,11 +1,16 @@
 package com.androsz.electricsleepbeta.db;
 
 import com.androsz.electricsleepbeta.R;
+import com.androsz.electricsleepbeta.analysis.Downsamplers;
+import com.androsz.electricsleepbeta.analysis.PointListSource;
+import com.androsz.electricsleepbeta.analysis.SleepWakeClassifier;
+import com.androsz.electricsleepbeta.analysis.SleepWakeScorer;
 import com.androsz.electricsleepbeta.util.PointD;
 import static com.androsz.electricsleepbeta.db.ElectricSleepProvider.TimestampColumns;
 
 import com.google.android.apps.analytics.GoogleAnalyticsTracker;
 
+import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.res.Resources;
@@ -24,6 +29,7 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.List;
@@ -62,13 +68,58 @@ public class SleepSession implements BaseColumns, SleepSessionKeys,
 	public static final String SORT_ORDER_LIMIT_60 = DEFAULT_SORT_ORDER
 			+ " LIMIT 60";
 
+	/** Path segment of the sessions starting on a range of julian days. */
+	static final String PATH_JULIAN = "julian";
+
+	/** Path segment of the sessions starting in a range of timestamps. */
+	static final String PATH_TIMESTAMP = "timestamp";
+
+	/**
+	 * The uri of the sessions whose start julian day is from firstJulianDay
+	 * to lastJulianDay, both included.
+	 */
+	public static Uri buildJulianDayRangeUri(final int firstJulianDay,
+			final int lastJulianDay) {
+		return CONTENT_URI.buildUpon().appendPath(PATH_JULIAN)
+				.appendPath(Integer.toString(firstJulianDay))
+				.appendPath(Integer.toString(lastJulianDay)).build();
+	}
+
+	/**
+	 * The uri of the sessions that start at or after fromTimestamp and before
+	 * toTimestamp.
+	 */
+	public static Uri buildTimestampRangeUri(final long fromTimestamp,
+			final long toTimestamp) {
+		return CONTENT_URI.buildUpon().appendPath(PATH_TIMESTAMP)
+				.appendPath(Long.toString(fromTimestamp))
+				.appendPath(Long.toString(toTimestamp)).build();
+	}
+
+	/**
+	 * Every column of the table. The movement data is not among them; it is
+	 * in {@link SleepSessionData} and fetched by {@link #loadData}. The
+	 * {@link #PREVIEW} is, so lists can draw a session without fetching it.
+	 */
 	static String[] PROJECTION = new String[] { _ID, START_TIMESTAMP,
-			START_JULIAN_DAY, END_TIMESTAMP, TIMEZONE, DATA, DURATION, NOTE,
+			START_JULIAN_DAY, END_TIMESTAMP, TIMEZONE, DURATION, NOTE,
 			RATING, SPIKES, CALIBRATION_LEVEL, MIN, FELL_ASLEEP_TIMESTAMP,
-			CREATED_ON, UPDATED_ON };
+			CREATED_ON, UPDATED_ON, SLEEP_WAKE, SLEEP_CYCLES, POINT_COUNT,
+			PREVIEW };
+
+	/** The most points kept in a {@link #PREVIEW}, about a thumbnail's width. */
+	public static final int PREVIEW_POINTS = 128;
 
 	float mCalibrationLevel;
 	List<PointD> mData;
+	int mPointCount;
+	SleepDataPyramid mPyramid;
+	byte[] mPyramidBytes;
+	boolean mPyramidLoaded;
+	List<PointD> mPreview;
+	byte[] mPreviewBytes;
+	byte[] mSleepWake;
+	long[] mSleepCycles;
 	long mEndTimestamp;
 	long mId;
 	String mNote;
@@ -84,35 +135,106 @@ public class SleepSession implements BaseColumns, SleepSessionKeys,
 	long mCreatedOn;
 	long mUpdatedOn;
 
+	/**
+	 * The positions of the session columns in a cursor, -1 for those not in
+	 * its projection. Look them up once per cursor rather than once per row.
+	 */
+	public static final class Columns {
+		final int id;
+		final int startTimestamp;
+		final int startJulianDay;
+		final int endTimestamp;
+		final int timezone;
+		final int calibrationLevel;
+		final int min;
+		final int rating;
+		final int spikes;
+		final int duration;
+		final int fellAsleepTimestamp;
+		final int note;
+		final int createdOn;
+		final int updatedOn;
+		final int pointCount;
+		final int sleepWake;
+		final int sleepCycles;
+		final int preview;
+
+		public Columns(final Cursor cursor) {
+			id = cursor.getColumnIndex(_ID);
+			startTimestamp = cursor.getColumnIndex(START_TIMESTAMP);
+			startJulianDay = cursor.getColumnIndex(START_JULIAN_DAY);
+			endTimestamp = cursor.getColumnIndex(END_TIMESTAMP);
+			timezone = cursor.getColumnIndex(TIMEZONE);
+			calibrationLevel = cursor.getColumnIndex(CALIBRATION_LEVEL);
+			min = cursor.getColumnIndex(MIN);
+			rating = cursor.getColumnIndex(RATING);
+			spikes = cursor.getColumnIndex(SPIKES);
+			duration = cursor.getColumnIndex(DURATION);
+			fellAsleepTimestamp = cursor.getColumnIndex(FELL_ASLEEP_TIMESTAMP);
+			note = cursor.getColumnIndex(NOTE);
+			createdOn = cursor.getColumnIndex(CREATED_ON);
+			updatedOn = cursor.getColumnIndex(UPDATED_ON);
+			pointCount = cursor.getColumnIndex(POINT_COUNT);
+			sleepWake = cursor.getColumnIndex(SLEEP_WAKE);
+			sleepCycles = cursor.getColumnIndex(SLEEP_CYCLES);
+			preview = cursor.getColumnIndex(PREVIEW);
+		}
+
+		static long getLong(final Cursor cursor, final int index) {
+			return index == -1 ? 0 : cursor.getLong(index);
+		}
+
+		static int getInt(final Cursor cursor, final int index) {
+			return index == -1 ? 0 : cursor.getInt(index);
+		}
+	}
+
 	public SleepSession(final Cursor cursor) {
-		mId = cursor.getLong(cursor.getColumnIndex(_ID));
-		mStartTimestamp = cursor
-				.getLong(cursor.getColumnIndex(START_TIMESTAMP));
-		mStartJulianDay = cursor
-				.getInt(cursor.getColumnIndex(START_JULIAN_DAY));
-		mEndTimestamp = cursor.getLong(cursor.getColumnIndex(END_TIMESTAMP));
-		mTimezone = TimeZone.getTimeZone(cursor.getString(cursor
-				.getColumnIndex(TIMEZONE)));
-		mCalibrationLevel = cursor.getFloat(cursor
-				.getColumnIndex(CALIBRATION_LEVEL));
-		mMin = cursor.getDouble(cursor.getColumnIndex(MIN));
-		mRating = cursor.getInt(cursor.getColumnIndex(RATING));
-		mSpikes = cursor.getInt(cursor.getColumnIndex(SPIKES));
-		mDuration = cursor.getLong(cursor.getColumnIndex(DURATION));
-		mFellAsleepTimestamp = cursor.getLong(cursor
-				.getColumnIndex(FELL_ASLEEP_TIMESTAMP));
-		mNote = cursor.getString(cursor.getColumnIndex(NOTE));
-
-		mCreatedOn = cursor.getLong(cursor.getColumnIndex(CREATED_ON));
-		mUpdatedOn = cursor.getLong(cursor.getColumnIndex(UPDATED_ON));
+		this(cursor, new Columns(cursor));
+	}
 
-		try {
-			mData = (List<PointD>) byteArrayToObject(cursor.getBlob(cursor
-					.getColumnIndexOrThrow(DATA)));
-		} catch (final Exception e) {
-			GoogleAnalyticsTracker.getInstance().trackEvent(
-					Integer.toString(VERSION.SDK_INT), Build.MODEL,
-					"sleepSessionInstatiation : " + e.getMessage(), 0);
+	/**
+	 * Read the cursor's current row. Columns missing from its projection are
+	 * left at zero, or null for objects; the data is never read from it, see
+	 * {@link #loadData}.
+	 */
+	public SleepSession(final Cursor cursor, final Columns columns) {
+		mId = Columns.getLong(cursor, columns.id);
+		mStartTimestamp = Columns.getLong(cursor, columns.startTimestamp);
+		mStartJulianDay = Columns.getInt(cursor, columns.startJulianDay);
+		mEndTimestamp = Columns.getLong(cursor, columns.endTimestamp);
+		mTimezone = columns.timezone == -1 ? TimeZone.getDefault() : TimeZone
+				.getTimeZone(cursor.getString(columns.timezone));
+		if (columns.calibrationLevel != -1) {
+			mCalibrationLevel = cursor.getFloat(columns.calibrationLevel);
+		}
+		if (columns.min != -1) {
+			mMin = cursor.getDouble(columns.min);
+		}
+		mRating = Columns.getInt(cursor, columns.rating);
+		mSpikes = Columns.getInt(cursor, columns.spikes);
+		mDuration = Columns.getLong(cursor, columns.duration);
+		mFellAsleepTimestamp = Columns.getLong(cursor, columns.fellAsleepTimestamp);
+		if (columns.note != -1) {
+			mNote = cursor.getString(columns.note);
+		}
+
+		mCreatedOn = Columns.getLong(cursor, columns.createdOn);
+		mUpdatedOn = Columns.getLong(cursor, columns.updatedOn);
+		mPointCount = Columns.getInt(cursor, columns.pointCount);
+
+		if (columns.sleepWake != -1 && !cursor.isNull(columns.sleepWake)) {
+			mSleepWake = cursor.getBlob(columns.sleepWake);
+		}
+
+		if (columns.sleepCycles != -1 && !cursor.isNull(columns.sleepCycles)) {
+			final ByteBuffer cycles = ByteBuffer.wrap(cursor.getBlob(columns.sleepCycles));
+			mSleepCycles = new long[cycles.remaining() / 8];
+			cycles.asLongBuffer().get(mSleepCycles);
+		}
+
+		if (columns.preview != -1 && !cursor.isNull(columns.preview)) {
+			mPreviewBytes = cursor.getBlob(columns.preview);
 		}
 	}
 
@@ -125,6 +247,8 @@ public class SleepSession implements BaseColumns, SleepSessionKeys,
 		mStartJulianDay = getZeoJulianDay(startTimestamp);
 		mEndTimestamp = endTimestamp;
 		mData = data;
+		mPointCount = data.size();
+		mPreviewBytes = encodePreview(data);
 		mMin = min;
 		mCalibrationLevel = calibrationLevel;
 		mRating = rating;
@@ -139,10 +263,55 @@ public class SleepSession implements BaseColumns, SleepSessionKeys,
 		return mCalibrationLevel;
 	}
 
+	/**
+	 * Return the stored points, or null for a session read from a cursor
+	 * until {@link #loadData} has fetched them.
+	 */
 	public List<PointD> getData() {
 		return mData;
 	}
 
+	/**
+	 * Return the finest pyramid level that fits in maxPoints, such as the
+	 * width in pixels of the chart it is drawn in. Falls back to
+	 * {@link #getData()} when the session has no pyramid or it was not loaded,
+	 * and to {@link #getPreview()} when neither was. Never queries, so it is
+	 * safe on the UI thread.
+	 */
+	public List<PointD> getData(final int maxPoints) {
+		if (mPyramid != null) {
+			return mPyramid.getLevelFor(maxPoints);
+		}
+		if (mData != null) {
+			return mData;
+		}
+		return getPreview();
+	}
+
+	/**
+	 * Return at most {@link #PREVIEW_POINTS} points outlining the night, or
+	 * null if the session has no preview.
+	 */
+	public List<PointD> getPreview() {
+		if (mPreview == null && mPreviewBytes != null) {
+			try {
+				mPreview = SleepDataCodec.decode(mPreviewBytes).toList();
+			} catch (final IllegalArgumentException e) {
+				Log.w(TAG, "Could not decode the preview of session " + mId);
+				mPreviewBytes = null;
+			}
+		}
+		return mPreview;
+	}
+
+	/**
+	 * Return the session's pyramid or null if it has none or it was not
+	 * loaded.
+	 */
+	public SleepDataPyramid getPyramid() {
+		return mPyramid;
+	}
+
 	/**
 	 * Return annotation of date / time text such as: Thu, Jan 14
 	 * 
@@ -169,8 +338,12 @@ public class SleepSession implements BaseColumns, SleepSessionKeys,
 	}
 
 	public int getEndJulianDay() {
+		return getLocalJulianDay(getEndTimestamp());
+	}
+
+	static int getLocalJulianDay(final long timestamp) {
 		final Time local = new Time();
-		local.set(getEndTimestamp());
+		local.set(timestamp);
 		final long millis = local.normalize(true /* ignore DST */);
 		return Time.getJulianDay(millis, local.gmtoff);
 	}
@@ -185,6 +358,13 @@ public class SleepSession implements BaseColumns, SleepSessionKeys,
 		return cal.get(Calendar.MINUTE) + (cal.get(Calendar.HOUR_OF_DAY) * 60);
 	}
 
+	/**
+	 * The session's row id, or 0 if it has not been saved.
+	 */
+	public long getId() {
+		return mId;
+	}
+
 	public long getLocalizedStartTimestamp() {
 		return mStartTimestamp + mTimezone.getOffset(mStartTimestamp);
 	}
@@ -202,21 +382,38 @@ public class SleepSession implements BaseColumns, SleepSessionKeys,
 		return mNote;
 	}
 
+	/**
+	 * Return the number of stored points, which is known without loading
+	 * them.
+	 */
+	public int getPointCount() {
+		if (mPointCount == 0 && mData != null) {
+			return mData.size();
+		}
+		return mPointCount;
+	}
+
 	public int getRating() {
 		return mRating;
 	}
 
 	public int getSleepScore() {
+		return getSleepScore(getRating(), getSpikes(), getPointCount(),
+				getDuration(), getTimeToFallAsleep());
+	}
+
+	static int getSleepScore(final int rating, final int spikes,
+			final int pointCount, final long duration,
+			final long timeToFallAsleep) {
 		int score = 0;
-		final float rating = (getRating() - 1) / 4f;
-		final float deepPct = 1 - ((float) getSpikes() / getData().size());
+		final float ratingPct = (rating - 1) / 4f;
+		final float deepPct = 1 - ((float) spikes / pointCount);
 		final float fifteenMinutes = 1000 * 60 * 15;
 		final float eightHours = 1000 * 60 * 60 * 8;
 
 		final float diffFrom8Hours = 1 - Math.max(0,
-				Math.abs((getDuration() - eightHours)) / eightHours);
+				Math.abs((duration - eightHours)) / eightHours);
 
-		long timeToFallAsleep = getTimeToFallAsleep();
 		if (timeToFallAsleep == DID_NOT_FALL_ASLEEP) {
 			// we didn't fall asleep. Give a zero-score?
 			score = 0;
@@ -225,12 +422,29 @@ public class SleepSession implements BaseColumns, SleepSessionKeys,
 					/ Math.max(timeToFallAsleep, fifteenMinutes);
 
 			score = Math
-					.round((rating + deepPct + diffFrom8Hours + diffTimeToFallAsleep) / 4 * 100);
+					.round((ratingPct + deepPct + diffFrom8Hours + diffTimeToFallAsleep) / 4 * 100);
 		}
 
 		return score;
 	}
 
+	/**
+	 * Return the estimated ends of the night's sleep cycles in ascending
+	 * order, or null for sessions saved before cycles were stored.
+	 */
+	public long[] getSleepCycleBoundaries() {
+		return mSleepCycles;
+	}
+
+	/**
+	 * Return one {@link SleepWakeClassifier} label per
+	 * {@link SleepWakeScorer#EPOCH_MILLIS} from the start of the session, or
+	 * null for sessions saved before labels were stored.
+	 */
+	public byte[] getSleepWakeLabels() {
+		return mSleepWake;
+	}
+
 	public int getSpikes() {
 		return mSpikes;
 	}
@@ -291,8 +505,13 @@ public class SleepSession implements BaseColumns, SleepSessionKeys,
 	public static final long DID_NOT_FALL_ASLEEP = 0;
 
 	public long getTimeToFallAsleep() {
-		if (mFellAsleepTimestamp > mStartTimestamp) {
-			return mFellAsleepTimestamp - getStartTimestamp();
+		return getTimeToFallAsleep(mStartTimestamp, mFellAsleepTimestamp);
+	}
+
+	static long getTimeToFallAsleep(final long startTimestamp,
+			final long fellAsleepTimestamp) {
+		if (fellAsleepTimestamp > startTimestamp) {
+			return fellAsleepTimestamp - startTimestamp;
 		} else {
 			return DID_NOT_FALL_ASLEEP;
 		}
@@ -339,8 +558,73 @@ public class SleepSession implements BaseColumns, SleepSessionKeys,
 						DateUtils.FORMAT_SHOW_TIME);
 	}
 
+	/**
+	 * Fetch the stored points, and the pyramid if withPyramid is set, from
+	 * {@link SleepSessionData} unless they are already here. Sessions are
+	 * read without their data, so this is the way to get it; it queries the
+	 * provider, so do it once per session rather than per frame.
+	 */
+	public void loadData(final ContentResolver resolver, final boolean withPyramid) {
+		if (mId == ROW_INVALID || (mData != null && (!withPyramid || mPyramidLoaded))) {
+			return;
+		}
+		final Cursor cursor = resolver.query(SleepSessionData.buildUri(mId),
+				withPyramid ? SleepSessionData.PROJECTION_WITH_PYRAMID
+						: SleepSessionData.PROJECTION, null, null, null);
+		if (cursor == null) {
+			return;
+		}
+		try {
+			if (!cursor.moveToFirst()) {
+				return;
+			}
+			try {
+				mData = decodeData(cursor.getBlob(cursor
+						.getColumnIndexOrThrow(SleepSessionData.DATA)));
+			} catch (final Exception e) {
+				GoogleAnalyticsTracker.getInstance().trackEvent(
+						Integer.toString(VERSION.SDK_INT), Build.MODEL,
+						"sleepSessionInstatiation : " + e.getMessage(), 0);
+			}
+
+			final int pyramidIndex = cursor.getColumnIndex(SleepSessionData.PYRAMID);
+			if (pyramidIndex != -1 && !cursor.isNull(pyramidIndex)) {
+				try {
+					setPyramid(cursor.getBlob(pyramidIndex));
+				} catch (final IllegalArgumentException e) {
+					GoogleAnalyticsTracker.getInstance().trackEvent(
+							Integer.toString(VERSION.SDK_INT), Build.MODEL,
+							"sleepSessionPyramid : " + e.getMessage(), 0);
+				}
+			}
+			mPyramidLoaded |= withPyramid;
+		} finally {
+			cursor.close();
+		}
+	}
+
+	/**
+	 * Set the session's pyramid from its encoded form, as produced by
+	 * {@link SleepDataPyramid#encode}.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if encoded is not a pyramid.
+	 */
+	public void setPyramid(final byte[] encoded) {
+		mPyramid = encoded == null ? null : new SleepDataPyramid(encoded);
+		mPyramidBytes = encoded;
+	}
+
+	public void setSleepCycleBoundaries(final long[] boundaries) {
+		mSleepCycles = boundaries;
+	}
+
+	public void setSleepWakeLabels(final byte[] labels) {
+		mSleepWake = labels;
+	}
+
 	public ContentValues toContentValues() {
-		final ContentValues values = new ContentValues(11);
+		final ContentValues values = new ContentValues(16);
 		if (mId != ROW_INVALID) {
 			values.put(_ID, mId);
 		}
@@ -355,18 +639,60 @@ public class SleepSession implements BaseColumns, SleepSessionKeys,
 		values.put(CALIBRATION_LEVEL, mCalibrationLevel);
 		values.put(MIN, mMin);
 		values.put(FELL_ASLEEP_TIMESTAMP, mFellAsleepTimestamp);
+		values.put(POINT_COUNT, getPointCount());
+		if (mSleepWake != null) {
+			values.put(SLEEP_WAKE, mSleepWake);
+		}
+		if (mSleepCycles != null) {
+			final ByteBuffer cycles = ByteBuffer.allocate(mSleepCycles.length * 8);
+			cycles.asLongBuffer().put(mSleepCycles);
+			values.put(SLEEP_CYCLES, cycles.array());
+		}
+		if (mPreviewBytes != null) {
+			values.put(PREVIEW, mPreviewBytes);
+		}
+		return values;
+	}
 
-		try {
-			values.put(DATA, SleepSession.objectToByteArray(mData));
-		} catch (IOException e) {
-			Log.w(TAG, "Failure to marshall sleep data to byte array.");
-			GoogleAnalyticsTracker.getInstance().trackEvent(
-					Integer.toString(VERSION.SDK_INT), Build.MODEL,
-					"createSessionIOException : " + e.getMessage(), 0);
+	/**
+	 * Encode data reduced to at most {@link #PREVIEW_POINTS} for drawing, as
+	 * kept in {@link #PREVIEW}.
+	 */
+	public static byte[] encodePreview(final List<PointD> data) {
+		final double[] x = new double[PREVIEW_POINTS];
+		final double[] y = new double[PREVIEW_POINTS];
+		final int count = Downsamplers.forDisplay().downsample(new PointListSource(data),
+				PREVIEW_POINTS, x, y);
+		final float[] values = new float[count];
+		for (int i = 0; i < count; i++) {
+			values[i] = (float) y[i];
+		}
+		return SleepDataCodec.encode(x, values, count);
+	}
+
+	/**
+	 * The values of the session's {@link SleepSessionData} row, without the
+	 * session id. Only valid once the data is here.
+	 */
+	public ContentValues toDataContentValues() {
+		final ContentValues values = new ContentValues(2);
+		values.put(SleepSessionData.DATA, SleepDataCodec.encode(mData));
+		if (mPyramidBytes != null) {
+			values.put(SleepSessionData.PYRAMID, mPyramidBytes);
 		}
 		return values;
 	}
 
+	/**
+	 * Decode a stored {@link #DATA} value, which is either encoded by
+	 * {@link SleepDataCodec} or, if written before it, a serialized list.
+	 */
+	public static List<PointD> decodeData(final byte[] bytes)
+			throws StreamCorruptedException, IOException,
+			ClassNotFoundException {
+		return SleepDataCodec.decodeList(bytes);
+	}
+
 	public static Object byteArrayToObject(final byte[] bytes)
 			throws StreamCorruptedException, IOException,
 			ClassNotFoundException {
@@ -430,21 +756,20 @@ public class SleepSession implements BaseColumns, SleepSessionKeys,
 	 * Given a cursor generate a List of long values that contain: start
 	 * timestamp end timestamp start julian day end julian day database row id
 	 * 
-	 * WARNING We assume that the cursor given to us will have projection in the
-	 * form: new String[] {_ID, START_TIMESTAMP, END_TIMESTAMP, TIMEZONE}
+	 * The cursor needs at least the _ID, START_TIMESTAMP, START_JULIAN_DAY
+	 * and END_TIMESTAMP columns, in any order.
 	 */
 	public static List<Long[]> getStartEndTimestamps(Cursor cursor) {
 		List<Long[]> result = new ArrayList<Long[]>();
 		if (cursor.moveToFirst()) {
+			final Columns columns = new Columns(cursor);
 			do {
-				// TODO this is convoluted
-				final long id = cursor.getLong(0);
-				final long startTimestamp = cursor.getLong(1);
-				final long endTimestamp = cursor.getLong(2);
-				final SleepSession session = new SleepSession(cursor);
-				result.add(new Long[] { startTimestamp, endTimestamp,
+				final SleepSessionSummary session = new SleepSessionSummary(
+						cursor, columns);
+				result.add(new Long[] { session.getStartTimestamp(),
+						session.getEndTimestamp(),
 						(long) session.getStartJulianDay(),
-						(long) session.getEndJulianDay(), id });
+						(long) session.getEndJulianDay(), session.getId() });
 			} while (cursor.moveToNext());
 		}
 		return result;
@@ -457,10 +782,16 @@ interface SleepSessionKeys {
 	String DURATION = "duration";
 	String END_TIMESTAMP = "end_timestamp";
 	String FELL_ASLEEP_TIMESTAMP = "fell_asleep_timestamp";
+	String JOURNAL_ID = "journal_id";
 	String MIN = "min";
 	String NOTE = "note";
+	String POINT_COUNT = "point_count";
+	String PREVIEW = "preview";
+	String PYRAMID = "pyramid";
 	String RATING = "rating";
+	String SLEEP_CYCLES = "sleep_cycles";
 	String SLEEP_DATA = "data";
+	String SLEEP_WAKE = "sleep_wake";
 	String SPIKES = "spikes";
 	String START_JULIAN_DAY = "start_julian_day";
 	String START_TIMESTAMP = "start_timestamp";
@@ -0,0 +1,51 @@
+package com.androsz.electricsleepbeta.db;
+
+import android.content.ContentUris;
+import android.net.Uri;
+
+/**
+ * The movement data of a {@link SleepSession}, kept in a table of its own so
+ * that querying sessions never reads it. A row holds the session's stored
+ * points and its {@link SleepDataPyramid} and goes away with its session.
+ */
+public final class SleepSessionData {
+
+	public static final String PATH = "sleep_session_data";
+
+	public static final Uri CONTENT_URI = ElectricSleepProvider.BASE_CONTENT_URI
+			.buildUpon().appendPath(PATH).build();
+
+	public static final String CONTENT_TYPE = "vnd.android.cursor.dir/vnd.androsz.electricsleepbeta."
+			+ PATH;
+
+	public static final String CONTENT_ITEM_TYPE = "vnd.android.cursor.item/vnd.androsz.electricsleepbeta."
+			+ PATH;
+
+	/** The {@link SleepSession} _ID the data belongs to. */
+	public static final String SESSION_ID = "session_id";
+
+	/** The stored points, encoded by {@link SleepDataCodec}. */
+	public static final String DATA = "data";
+
+	/** The encoded {@link SleepDataPyramid}, if the session has one. */
+	public static final String PYRAMID = "pyramid";
+
+	public static final String[] PROJECTION = new String[] { SESSION_ID, DATA };
+
+	/**
+	 * {@link #PROJECTION} plus the pyramid, which holds the whole night; only
+	 * ask for it when showing a single session.
+	 */
+	public static final String[] PROJECTION_WITH_PYRAMID = new String[] { SESSION_ID, DATA,
+			PYRAMID };
+
+	/**
+	 * The uri of the data of the session with sessionId.
+	 */
+	public static Uri buildUri(final long sessionId) {
+		return ContentUris.withAppendedId(CONTENT_URI, sessionId);
+	}
+
+	private SleepSessionData() {
+	}
+}
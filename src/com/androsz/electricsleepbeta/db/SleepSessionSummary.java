@@ -0,0 +1,96 @@
+package com.androsz.electricsleepbeta.db;
+
+import android.database.Cursor;
+
+/**
+ * The figures of a saved session that aggregate views need, without its
+ * note, labels or data. Cheap to build a row at a time from a cursor over
+ * {@link #PROJECTION} and a {@link SleepSession.Columns} looked up once.
+ */
+public final class SleepSessionSummary {
+
+	/** Everything a summary reads. */
+	public static final String[] PROJECTION = new String[] { SleepSession._ID,
+			SleepSession.START_TIMESTAMP, SleepSession.START_JULIAN_DAY,
+			SleepSession.END_TIMESTAMP, SleepSession.DURATION, SleepSession.RATING,
+			SleepSession.SPIKES, SleepSession.FELL_ASLEEP_TIMESTAMP,
+			SleepSession.POINT_COUNT };
+
+	private final long mId;
+	private final long mStartTimestamp;
+	private final int mStartJulianDay;
+	private final long mEndTimestamp;
+	private final long mDuration;
+	private final int mRating;
+	private final int mSpikes;
+	private final long mFellAsleepTimestamp;
+	private final int mPointCount;
+
+	/**
+	 * Read the cursor's current row; columns missing from its projection are
+	 * zero.
+	 */
+	public SleepSessionSummary(final Cursor cursor, final SleepSession.Columns columns) {
+		mId = SleepSession.Columns.getLong(cursor, columns.id);
+		mStartTimestamp = SleepSession.Columns.getLong(cursor, columns.startTimestamp);
+		mStartJulianDay = SleepSession.Columns.getInt(cursor, columns.startJulianDay);
+		mEndTimestamp = SleepSession.Columns.getLong(cursor, columns.endTimestamp);
+		mDuration = SleepSession.Columns.getLong(cursor, columns.duration);
+		mRating = SleepSession.Columns.getInt(cursor, columns.rating);
+		mSpikes = SleepSession.Columns.getInt(cursor, columns.spikes);
+		mFellAsleepTimestamp = SleepSession.Columns.getLong(cursor, columns.fellAsleepTimestamp);
+		mPointCount = SleepSession.Columns.getInt(cursor, columns.pointCount);
+	}
+
+	public long getDuration() {
+		return mDuration;
+	}
+
+	public int getEndJulianDay() {
+		return SleepSession.getLocalJulianDay(mEndTimestamp);
+	}
+
+	public long getEndTimestamp() {
+		return mEndTimestamp;
+	}
+
+	public long getId() {
+		return mId;
+	}
+
+	public int getPointCount() {
+		return mPointCount;
+	}
+
+	public int getRating() {
+		return mRating;
+	}
+
+	/**
+	 * The same score as {@link SleepSession#getSleepScore()}.
+	 */
+	public int getSleepScore() {
+		return SleepSession.getSleepScore(mRating, mSpikes, mPointCount, mDuration,
+				getTimeToFallAsleep());
+	}
+
+	public int getSpikes() {
+		return mSpikes;
+	}
+
+	public int getStartJulianDay() {
+		return mStartJulianDay;
+	}
+
+	public long getStartTimestamp() {
+		return mStartTimestamp;
+	}
+
+	/**
+	 * The time it took to fall asleep or
+	 * {@link SleepSession#DID_NOT_FALL_ASLEEP}.
+	 */
+	public long getTimeToFallAsleep() {
+		return SleepSession.getTimeToFallAsleep(mStartTimestamp, mFellAsleepTimestamp);
+	}
+}
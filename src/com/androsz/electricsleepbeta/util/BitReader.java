@@ -0,0 +1,44 @@
+package com.androsz.electricsleepbeta.util;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads what a {@link BitWriter} wrote from the remaining bytes of a
+ * ByteBuffer, advancing its position a byte at a time.
+ */
+public final class BitReader {
+
+	private final ByteBuffer mBuffer;
+	private int mCurrent;
+	private int mBitsInCurrent;
+
+	public BitReader(final ByteBuffer buffer) {
+		mBuffer = buffer;
+	}
+
+	/**
+	 * Read bits bits, up to 64, as the low bits of the result.
+	 *
+	 * @throws BufferUnderflowException
+	 *             if the buffer runs out.
+	 */
+	public long read(int bits) {
+		long value = 0;
+		while (bits > 0) {
+			if (mBitsInCurrent == 0) {
+				mCurrent = mBuffer.get() & 0xff;
+				mBitsInCurrent = 8;
+			}
+			final int take = Math.min(mBitsInCurrent, bits);
+			mBitsInCurrent -= take;
+			value = (value << take) | ((mCurrent >>> mBitsInCurrent) & ((1 << take) - 1));
+			bits -= take;
+		}
+		return value;
+	}
+
+	public boolean readBit() {
+		return read(1) != 0;
+	}
+}
@@ -0,0 +1,63 @@
+package com.androsz.electricsleepbeta.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Writes values of any width up to 64 bits, most significant bit first, into
+ * a ByteBuffer that grows as needed.
+ */
+public final class BitWriter {
+
+	private ByteBuffer mBuffer;
+	private int mCurrent;
+	private int mBitsInCurrent;
+
+	public BitWriter(final int initialCapacity) {
+		mBuffer = ByteBuffer.allocate(Math.max(16, initialCapacity));
+	}
+
+	/**
+	 * Write the low bits bits of value.
+	 */
+	public void write(final long value, int bits) {
+		while (bits > 0) {
+			final int take = Math.min(8 - mBitsInCurrent, bits);
+			bits -= take;
+			mCurrent = (mCurrent << take) | (int) ((value >>> bits) & ((1 << take) - 1));
+			mBitsInCurrent += take;
+			if (mBitsInCurrent == 8) {
+				put((byte) mCurrent);
+				mCurrent = 0;
+				mBitsInCurrent = 0;
+			}
+		}
+	}
+
+	public void writeBit(final boolean bit) {
+		write(bit ? 1 : 0, 1);
+	}
+
+	/**
+	 * The bits written so far, zero padded to a whole byte. Writing can go on
+	 * afterwards.
+	 */
+	public byte[] toByteArray() {
+		final int length = mBuffer.position() + (mBitsInCurrent > 0 ? 1 : 0);
+		final byte[] bytes = new byte[length];
+		System.arraycopy(mBuffer.array(), 0, bytes, 0, mBuffer.position());
+		if (mBitsInCurrent > 0) {
+			bytes[length - 1] = (byte) (mCurrent << (8 - mBitsInCurrent));
+		}
+		return bytes;
+	}
+
+	private void put(final byte b) {
+		if (!mBuffer.hasRemaining()) {
+			final ByteBuffer grown = ByteBuffer.allocate(mBuffer.capacity() * 2);
+			mBuffer.flip();
+			grown.put(mBuffer);
+			mBuffer = grown;
+		}
+		mBuffer.put(b);
+	}
+}
@@ -0,0 +1,119 @@
+package com.androsz.electricsleepbeta.util;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Steps through a {@link GorillaEncoder} block one point at a time, so a
+ * reader that stops early never decodes the rest.
+ *
+ * <pre>
+ * while (decoder.next()) {
+ *     use(decoder.getTimestamp(), decoder.getValue());
+ * }
+ * </pre>
+ */
+public final class GorillaDecoder {
+
+	private final BitReader mReader;
+	private final int mCount;
+	private int mIndex;
+
+	private long mTimestamp;
+	private long mDelta;
+	private long mBits;
+	private int mLeading;
+	private int mTrailing;
+
+	/**
+	 * Decode the block starting at the buffer's position.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if the block's count is impossible for its length.
+	 */
+	public GorillaDecoder(final ByteBuffer block) {
+		if (block.remaining() < 4) {
+			throw new IllegalArgumentException("Truncated block");
+		}
+		mCount = block.getInt();
+		// the first point takes 128 bits and every other one at least two.
+		if (mCount < 0 || (mCount > 0 && 128 + (mCount - 1) * 2L > block.remaining() * 8L)) {
+			throw new IllegalArgumentException("Bad block count " + mCount);
+		}
+		mReader = new BitReader(block);
+	}
+
+	public int size() {
+		return mCount;
+	}
+
+	/**
+	 * Move to the next point.
+	 *
+	 * @return false once every point has been read.
+	 * @throws IllegalArgumentException
+	 *             if the block is truncated.
+	 */
+	public boolean next() {
+		if (mIndex == mCount) {
+			return false;
+		}
+		try {
+			if (mIndex == 0) {
+				mTimestamp = mReader.read(64);
+				mBits = mReader.read(64);
+			} else {
+				mDelta += readDeltaOfDelta();
+				mTimestamp += mDelta;
+				readXor();
+			}
+		} catch (final BufferUnderflowException e) {
+			throw new IllegalArgumentException("Truncated block");
+		}
+		mIndex++;
+		return true;
+	}
+
+	public long getTimestamp() {
+		return mTimestamp;
+	}
+
+	public double getValue() {
+		return Double.longBitsToDouble(mBits);
+	}
+
+	private long readDeltaOfDelta() {
+		if (!mReader.readBit()) {
+			return 0;
+		}
+		if (!mReader.readBit()) {
+			return signed(mReader.read(7), 7);
+		}
+		if (!mReader.readBit()) {
+			return signed(mReader.read(9), 9);
+		}
+		if (!mReader.readBit()) {
+			return signed(mReader.read(12), 12);
+		}
+		return mReader.read(64);
+	}
+
+	private void readXor() {
+		if (!mReader.readBit()) {
+			return;
+		}
+		if (mReader.readBit()) {
+			mLeading = (int) mReader.read(5);
+			int significant = (int) mReader.read(6);
+			if (significant == 0) {
+				significant = 64;
+			}
+			mTrailing = 64 - mLeading - significant;
+		}
+		mBits ^= mReader.read(64 - mLeading - mTrailing) << mTrailing;
+	}
+
+	private static long signed(final long value, final int bits) {
+		return (value << (64 - bits)) >> (64 - bits);
+	}
+}
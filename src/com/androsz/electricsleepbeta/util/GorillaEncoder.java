@@ -0,0 +1,106 @@
+package com.androsz.electricsleepbeta.util;
+
+/**
+ * Compresses a series of timestamped doubles a point at a time, after
+ * Facebook's Gorilla time series database.
+ *
+ * A block is the point count as an int followed by a bit stream. The first
+ * point is stored whole. After it, a timestamp is stored as the change of its
+ * step from the previous one, in one of five widths picked by a short prefix,
+ * so the regular epochs of a night take a bit or a byte each. A value is
+ * stored as its XOR with the previous value: a single bit if they are equal,
+ * otherwise only the bits that differ, reusing the previous value's window of
+ * leading and trailing zeros when the new bits fit in it.
+ *
+ * Read a block back with {@link GorillaDecoder}. Not thread safe.
+ */
+public final class GorillaEncoder {
+
+	private final BitWriter mWriter;
+	private int mCount;
+
+	private long mPreviousTimestamp;
+	private long mPreviousDelta;
+	private long mPreviousBits;
+	private int mPreviousLeading = -1;
+	private int mPreviousTrailing;
+
+	public GorillaEncoder(final int expectedPoints) {
+		// about two bytes a point for a typical night
+		mWriter = new BitWriter(expectedPoints * 2);
+	}
+
+	public void add(final long timestamp, final double value) {
+		final long bits = Double.doubleToRawLongBits(value);
+		if (mCount++ == 0) {
+			mWriter.write(timestamp, 64);
+			mWriter.write(bits, 64);
+		} else {
+			final long delta = timestamp - mPreviousTimestamp;
+			writeDeltaOfDelta(delta - mPreviousDelta);
+			mPreviousDelta = delta;
+			writeXor(bits ^ mPreviousBits);
+		}
+		mPreviousTimestamp = timestamp;
+		mPreviousBits = bits;
+	}
+
+	public int size() {
+		return mCount;
+	}
+
+	/**
+	 * The block of the points added so far.
+	 */
+	public byte[] toByteArray() {
+		final byte[] stream = mWriter.toByteArray();
+		final byte[] block = new byte[4 + stream.length];
+		block[0] = (byte) (mCount >>> 24);
+		block[1] = (byte) (mCount >>> 16);
+		block[2] = (byte) (mCount >>> 8);
+		block[3] = (byte) mCount;
+		System.arraycopy(stream, 0, block, 4, stream.length);
+		return block;
+	}
+
+	private void writeDeltaOfDelta(final long deltaOfDelta) {
+		if (deltaOfDelta == 0) {
+			mWriter.write(0x0, 1);
+		} else if (deltaOfDelta >= -64 && deltaOfDelta < 64) {
+			mWriter.write(0x2, 2);
+			mWriter.write(deltaOfDelta, 7);
+		} else if (deltaOfDelta >= -256 && deltaOfDelta < 256) {
+			mWriter.write(0x6, 3);
+			mWriter.write(deltaOfDelta, 9);
+		} else if (deltaOfDelta >= -2048 && deltaOfDelta < 2048) {
+			mWriter.write(0xe, 4);
+			mWriter.write(deltaOfDelta, 12);
+		} else {
+			mWriter.write(0xf, 4);
+			mWriter.write(deltaOfDelta, 64);
+		}
+	}
+
+	private void writeXor(final long xor) {
+		if (xor == 0) {
+			mWriter.write(0x0, 1);
+			return;
+		}
+		final int leading = Math.min(31, Long.numberOfLeadingZeros(xor));
+		final int trailing = Long.numberOfTrailingZeros(xor);
+		if (mPreviousLeading != -1 && leading >= mPreviousLeading
+				&& trailing >= mPreviousTrailing) {
+			mWriter.write(0x2, 2);
+			mWriter.write(xor >>> mPreviousTrailing, 64 - mPreviousLeading - mPreviousTrailing);
+		} else {
+			final int significant = 64 - leading - trailing;
+			mWriter.write(0x3, 2);
+			mWriter.write(leading, 5);
+			// 64 significant bits do not fit in six bits; they are stored as 0.
+			mWriter.write(significant & 0x3f, 6);
+			mWriter.write(xor >>> trailing, significant);
+			mPreviousLeading = leading;
+			mPreviousTrailing = trailing;
+		}
+	}
+}
@@ -0,0 +1,160 @@
+package com.androsz.electricsleepbeta.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Preallocated, lock-free ring buffer of accelerometer samples for exactly one
+ * producer (the sensor callback) and one consumer (the sensor processing
+ * thread).
+ *
+ * The producer never blocks and never allocates. If the consumer falls behind
+ * and the buffer is full, the new sample is dropped and counted so that
+ * overload on slow devices is visible instead of silently piling up threads.
+ */
+public final class SampleRingBuffer {
+
+	/**
+	 * Receives samples drained from the buffer, in the order they were
+	 * offered.
+	 */
+	public interface SampleHandler {
+		void onSample(float x, float y, float z, long timestampNanos);
+	}
+
+	private final int mCapacity;
+	private final int mMask;
+
+	private final float[] mX;
+	private final float[] mY;
+	private final float[] mZ;
+	private final long[] mTimestamp;
+
+	/** Sequence of the next slot to read. Only advanced by the consumer. */
+	private final AtomicLong mHead = new AtomicLong();
+
+	/** Sequence of the next slot to write. Only advanced by the producer. */
+	private final AtomicLong mTail = new AtomicLong();
+
+	/** Written by the producer only. */
+	private volatile long mDroppedCount;
+
+	/** Written by the consumer only. */
+	private volatile int mMaxDepth;
+
+	/** The consumer thread while it is parked waiting for samples. */
+	private volatile Thread mWaiter;
+
+	/**
+	 * @param capacity
+	 *            minimum number of samples the buffer can hold; rounded up to
+	 *            the next power of two.
+	 */
+	public SampleRingBuffer(final int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity must be positive: " + capacity);
+		}
+		int size = 1;
+		while (size < capacity) {
+			size <<= 1;
+		}
+		mCapacity = size;
+		mMask = size - 1;
+		mX = new float[size];
+		mY = new float[size];
+		mZ = new float[size];
+		mTimestamp = new long[size];
+	}
+
+	/**
+	 * Producer side. Copies the sample into the next free slot.
+	 *
+	 * @return false if the buffer was full and the sample was dropped.
+	 */
+	public boolean offer(final float x, final float y, final float z, final long timestampNanos) {
+		final long tail = mTail.get();
+		if (tail - mHead.get() >= mCapacity) {
+			mDroppedCount++;
+			return false;
+		}
+		final int index = (int) tail & mMask;
+		mX[index] = x;
+		mY[index] = y;
+		mZ[index] = z;
+		mTimestamp[index] = timestampNanos;
+		mTail.set(tail + 1);
+
+		final Thread waiter = mWaiter;
+		if (waiter != null) {
+			LockSupport.unpark(waiter);
+		}
+		return true;
+	}
+
+	/**
+	 * Consumer side. Hands up to maxSamples buffered samples to the handler
+	 * in order and frees their slots.
+	 *
+	 * @return the number of samples drained.
+	 */
+	public int drain(final SampleHandler handler, final int maxSamples) {
+		final long head = mHead.get();
+		final long available = mTail.get() - head;
+		if (available == 0) {
+			return 0;
+		}
+		if (available > mMaxDepth) {
+			mMaxDepth = (int) available;
+		}
+
+		final int count = (int) Math.min(available, maxSamples);
+		for (int i = 0; i < count; i++) {
+			final int index = (int) (head + i) & mMask;
+			handler.onSample(mX[index], mY[index], mZ[index], mTimestamp[index]);
+		}
+		mHead.lazySet(head + count);
+		return count;
+	}
+
+	/**
+	 * Consumer side. Parks the calling thread until a sample is offered or the
+	 * timeout elapses. Returns immediately if samples are already buffered.
+	 */
+	public void await(final long timeoutNanos) {
+		if (size() > 0) {
+			return;
+		}
+		mWaiter = Thread.currentThread();
+		// re-check after publishing ourselves so a concurrent offer cannot be
+		// missed.
+		if (size() == 0) {
+			LockSupport.parkNanos(this, timeoutNanos);
+		}
+		mWaiter = null;
+	}
+
+	public int getCapacity() {
+		return mCapacity;
+	}
+
+	/**
+	 * Total number of samples dropped because the buffer was full.
+	 */
+	public long getDroppedCount() {
+		return mDroppedCount;
+	}
+
+	/**
+	 * Largest backlog the consumer has observed when draining.
+	 */
+	public int getMaxDepth() {
+		return mMaxDepth;
+	}
+
+	/**
+	 * Number of samples currently waiting to be drained.
+	 */
+	public int size() {
+		return (int) (mTail.get() - mHead.get());
+	}
+}
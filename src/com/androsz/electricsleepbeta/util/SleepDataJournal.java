@@ -0,0 +1,492 @@
+package com.androsz.electricsleepbeta.util;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.androsz.electricsleepbeta.analysis.ActivitySource;
+import com.androsz.electricsleepbeta.analysis.EpochFeatures;
+
+/**
+ * Crash-recoverable journal of the sleep points recorded during a session.
+ *
+ * The journal is a preallocated, memory-mapped file. A fixed size header
+ * holds the session id, start time, calibration level, a finished flag and
+ * the number of committed points. Each point is a {@link #RECORD_SIZE} byte
+ * record: x and y in the same big-endian layout as
+ * {@link PointD#toByteArray(PointD)}, followed by the epoch's
+ * {@link EpochFeatures} (mean, variance, crossings and activity count).
+ * Because points are
+ * written straight into the mapping, they survive the process being killed;
+ * the mapping is forced to disk in groups, after a configurable number of
+ * epochs or amount of time, whichever comes first.
+ *
+ * Recovering an unfinished journal only reads the header, so it takes the
+ * same time no matter how long the night was. Whatever the writer derives
+ * from the points can be saved next to the journal with
+ * {@link #writeCheckpoint} whenever an append syncs; a resumed writer restores
+ * it and only has to replay the points after it.
+ *
+ * All methods are synchronized so the writer and the thread that closes the
+ * journal do not need to coordinate.
+ */
+public final class SleepDataJournal {
+
+	/**
+	 * Snapshot of a journal's header.
+	 */
+	public static final class Header {
+		public final long sessionId;
+		public final long startTimestamp;
+		public final float calibrationLevel;
+		public final int pointCount;
+		public final boolean finished;
+
+		Header(final ByteBuffer header) {
+			sessionId = header.getLong(OFFSET_SESSION_ID);
+			startTimestamp = header.getLong(OFFSET_START_TIMESTAMP);
+			calibrationLevel = header.getFloat(OFFSET_CALIBRATION_LEVEL);
+			pointCount = header.getInt(OFFSET_POINT_COUNT);
+			finished = (header.getInt(OFFSET_FLAGS) & FLAG_FINISHED) != 0;
+		}
+	}
+
+	/**
+	 * State saved by {@link SleepDataJournal#writeCheckpoint}, as of the
+	 * first pointCount points.
+	 */
+	public static final class Checkpoint {
+		public final int pointCount;
+		public final byte[] state;
+
+		Checkpoint(final int pointCount, final byte[] state) {
+			this.pointCount = pointCount;
+			this.state = state;
+		}
+	}
+
+	/** Offset of the first point in the file. */
+	public static final int HEADER_SIZE = 64;
+
+	/** Size of one point; the first {@link PointD#BYTE_LENGTH} bytes are x and y. */
+	public static final int RECORD_SIZE = 32;
+
+	private static final int RECORD_MEAN = 16;
+	private static final int RECORD_VARIANCE = 20;
+	private static final int RECORD_CROSSINGS = 24;
+	private static final int RECORD_ACTIVITY = 28;
+
+	private static final int MAGIC = 0x45534a31; // "ESJ1"
+	private static final int VERSION = 2;
+
+	private static final int OFFSET_MAGIC = 0;
+	private static final int OFFSET_VERSION = 4;
+	private static final int OFFSET_FLAGS = 8;
+	private static final int OFFSET_POINT_COUNT = 12;
+	private static final int OFFSET_SESSION_ID = 16;
+	private static final int OFFSET_START_TIMESTAMP = 24;
+	private static final int OFFSET_CALIBRATION_LEVEL = 32;
+
+	private static final int FLAG_FINISHED = 1;
+
+	private static final int CHECKPOINT_MAGIC = 0x45534331; // "ESC1"
+	private static final String CHECKPOINT_SUFFIX = ".checkpoint";
+
+	/** About 5.5 hours at the default 5 second epoch. */
+	private static final int PREALLOCATED_POINTS = 4096;
+
+	/**
+	 * Start a new journal, replacing any existing file.
+	 */
+	public static SleepDataJournal create(final File file, final long sessionId,
+			final long startTimestamp, final float calibrationLevel,
+			final int syncEveryEpochs, final long syncIntervalMs) throws IOException {
+		delete(file);
+		final SleepDataJournal journal = new SleepDataJournal(file, syncEveryEpochs,
+				syncIntervalMs, PREALLOCATED_POINTS);
+		final MappedByteBuffer map = journal.mMap;
+		map.putInt(OFFSET_MAGIC, MAGIC);
+		map.putInt(OFFSET_VERSION, VERSION);
+		map.putInt(OFFSET_FLAGS, 0);
+		map.putInt(OFFSET_POINT_COUNT, 0);
+		map.putLong(OFFSET_SESSION_ID, sessionId);
+		map.putLong(OFFSET_START_TIMESTAMP, startTimestamp);
+		map.putFloat(OFFSET_CALIBRATION_LEVEL, calibrationLevel);
+		map.force();
+		journal.mPointCount = 0;
+		return journal;
+	}
+
+	/**
+	 * Delete the journal in file and its checkpoint.
+	 */
+	public static void delete(final File file) {
+		file.delete();
+		getCheckpointFile(file).delete();
+	}
+
+	private static File getCheckpointFile(final File file) {
+		return new File(file.getPath() + CHECKPOINT_SUFFIX);
+	}
+
+	/**
+	 * Read the header of the journal in file.
+	 *
+	 * @return null if there is no journal or it is not one we understand.
+	 */
+	public static Header readHeader(final File file) throws IOException {
+		if (!file.exists() || file.length() < HEADER_SIZE) {
+			return null;
+		}
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			final FileChannel channel = raf.getChannel();
+			while (header.hasRemaining()) {
+				if (channel.read(header, header.position()) < 0) {
+					return null;
+				}
+			}
+			if (header.getInt(OFFSET_MAGIC) != MAGIC || header.getInt(OFFSET_VERSION) != VERSION) {
+				return null;
+			}
+			final Header result = new Header(header);
+			final long maxPoints = (file.length() - HEADER_SIZE) / RECORD_SIZE;
+			if (result.pointCount < 0 || result.pointCount > maxPoints) {
+				return null;
+			}
+			return result;
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Read-only view of a journal's points, gap markers included.
+	 */
+	public static final class Records implements ActivitySource {
+		private final ByteBuffer mRecords;
+		private final int mCount;
+
+		Records(final ByteBuffer records, final int count) {
+			mRecords = records;
+			mCount = count;
+		}
+
+		@Override
+		public int size() {
+			return mCount;
+		}
+
+		@Override
+		public double getX(final int index) {
+			return mRecords.getDouble(index * RECORD_SIZE);
+		}
+
+		@Override
+		public double getY(final int index) {
+			return mRecords.getDouble(index * RECORD_SIZE + 8);
+		}
+
+		@Override
+		public float getActivity(final int index) {
+			return mRecords.getFloat(index * RECORD_SIZE + RECORD_MEAN);
+		}
+
+		/**
+		 * The number of points that are not gap markers.
+		 */
+		public int countEpochs() {
+			int epochs = 0;
+			for (int i = 0; i < mCount; i++) {
+				if (!isGap(getY(i))) {
+					epochs++;
+				}
+			}
+			return epochs;
+		}
+	}
+
+	/**
+	 * Map the first pointCount records of the journal in file read-only, so
+	 * they can be read without copying them onto the heap.
+	 */
+	public static Records mapRecords(final File file, final int pointCount) throws IOException {
+		final RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			// the mapping stays valid after the file is closed
+			return new Records(raf.getChannel().map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE,
+					(long) pointCount * RECORD_SIZE), pointCount);
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Reopen an unfinished journal so more points can be appended.
+	 *
+	 * @return null if there is no unfinished journal in file.
+	 */
+	public static SleepDataJournal resume(final File file, final int syncEveryEpochs,
+			final long syncIntervalMs) throws IOException {
+		final Header header = readHeader(file);
+		if (header == null || header.finished) {
+			return null;
+		}
+		final int capacity = (int) ((file.length() - HEADER_SIZE) / RECORD_SIZE);
+		final SleepDataJournal journal = new SleepDataJournal(file, syncEveryEpochs,
+				syncIntervalMs, capacity);
+		journal.mPointCount = header.pointCount;
+		return journal;
+	}
+
+	private final File mCheckpointFile;
+	private final RandomAccessFile mFile;
+	private final FileChannel mChannel;
+	private MappedByteBuffer mMap;
+	private int mCapacity;
+
+	private final int mSyncEveryEpochs;
+	private final long mSyncIntervalNanos;
+
+	private int mPointCount;
+	private int mPendingEpochs;
+	private long mLastSyncNanos;
+	private boolean mClosed;
+
+	private SleepDataJournal(final File file, final int syncEveryEpochs,
+			final long syncIntervalMs, final int capacity) throws IOException {
+		mCheckpointFile = getCheckpointFile(file);
+		mFile = new RandomAccessFile(file, "rw");
+		mChannel = mFile.getChannel();
+		mSyncEveryEpochs = Math.max(1, syncEveryEpochs);
+		mSyncIntervalNanos = syncIntervalMs * 1000 * 1000;
+		mLastSyncNanos = System.nanoTime();
+		try {
+			map(capacity);
+		} catch (final IOException e) {
+			mFile.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Append one point and the features of its epoch, forcing them to disk if
+	 * the sync policy says so.
+	 *
+	 * @return true if this call forced the journal to disk.
+	 */
+	public synchronized boolean append(final double x, final double y,
+			final EpochFeatures features) throws IOException {
+		final int offset = nextRecord();
+		mMap.putDouble(offset, x);
+		mMap.putDouble(offset + 8, y);
+		mMap.putFloat(offset + RECORD_MEAN, features.mean);
+		mMap.putFloat(offset + RECORD_VARIANCE, features.variance);
+		mMap.putInt(offset + RECORD_CROSSINGS, features.crossings);
+		mMap.putFloat(offset + RECORD_ACTIVITY, features.activityCount);
+		return commitRecord();
+	}
+
+	/**
+	 * Append a marker for epochCount consecutive epochs, starting at x, that
+	 * received no samples. A gap is stored as a point whose y is NaN; readers
+	 * skip it with {@link #isGap(int)} or {@link #isGap(double)}.
+	 *
+	 * @return true if this call forced the journal to disk.
+	 */
+	public synchronized boolean appendGap(final double x, final int epochCount)
+			throws IOException {
+		final int offset = nextRecord();
+		mMap.putDouble(offset, x);
+		mMap.putDouble(offset + 8, Double.NaN);
+		mMap.putFloat(offset + RECORD_MEAN, 0);
+		mMap.putFloat(offset + RECORD_VARIANCE, 0);
+		mMap.putInt(offset + RECORD_CROSSINGS, epochCount);
+		mMap.putFloat(offset + RECORD_ACTIVITY, 0);
+		return commitRecord();
+	}
+
+	/**
+	 * Whether a point with this y is a gap marker.
+	 */
+	public static boolean isGap(final double y) {
+		return Double.isNaN(y);
+	}
+
+	public synchronized boolean isGap(final int index) {
+		return isGap(getY(index));
+	}
+
+	private int nextRecord() throws IOException {
+		if (mClosed) {
+			throw new IOException("journal is closed");
+		}
+		if (mPointCount == mCapacity) {
+			mMap.force();
+			map(mCapacity * 2);
+		}
+		return HEADER_SIZE + mPointCount * RECORD_SIZE;
+	}
+
+	private boolean commitRecord() {
+		mMap.putInt(OFFSET_POINT_COUNT, ++mPointCount);
+
+		if (++mPendingEpochs >= mSyncEveryEpochs
+				|| System.nanoTime() - mLastSyncNanos >= mSyncIntervalNanos) {
+			commit();
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Force all appended points and the header to disk.
+	 */
+	public synchronized void commit() {
+		if (mClosed) {
+			return;
+		}
+		mMap.force();
+		mPendingEpochs = 0;
+		mLastSyncNanos = System.nanoTime();
+	}
+
+	/**
+	 * Save state derived from the points appended so far, replacing the
+	 * previous checkpoint. Call it right after an append that synced, so the
+	 * checkpoint never covers points that are not on disk.
+	 */
+	public synchronized void writeCheckpoint(final byte[] state) throws IOException {
+		if (mClosed) {
+			throw new IOException("journal is closed");
+		}
+		final File temp = new File(mCheckpointFile.getPath() + ".tmp");
+		final FileOutputStream file = new FileOutputStream(temp);
+		try {
+			final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file));
+			out.writeInt(CHECKPOINT_MAGIC);
+			out.writeLong(mMap.getLong(OFFSET_SESSION_ID));
+			out.writeInt(mPointCount);
+			out.writeInt(state.length);
+			out.write(state);
+			out.flush();
+			file.getFD().sync();
+		} finally {
+			file.close();
+		}
+		if (!temp.renameTo(mCheckpointFile)) {
+			throw new IOException("could not replace " + mCheckpointFile);
+		}
+	}
+
+	/**
+	 * The last checkpoint written for this session.
+	 *
+	 * @return null if there is none, or it is not one we understand.
+	 */
+	public synchronized Checkpoint readCheckpoint() throws IOException {
+		if (!mCheckpointFile.exists()) {
+			return null;
+		}
+		final DataInputStream in = new DataInputStream(new FileInputStream(mCheckpointFile));
+		try {
+			if (in.readInt() != CHECKPOINT_MAGIC
+					|| in.readLong() != mMap.getLong(OFFSET_SESSION_ID)) {
+				return null;
+			}
+			final int pointCount = in.readInt();
+			final int length = in.readInt();
+			if (pointCount < 0 || pointCount > mPointCount || length < 0
+					|| length > mCheckpointFile.length()) {
+				return null;
+			}
+			final byte[] state = new byte[length];
+			in.readFully(state);
+			return new Checkpoint(pointCount, state);
+		} catch (final EOFException e) {
+			return null;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Commit and release the file without marking the session finished, so it
+	 * can still be resumed.
+	 */
+	public synchronized void close() throws IOException {
+		if (mClosed) {
+			return;
+		}
+		commit();
+		mClosed = true;
+		mMap = null;
+		mFile.close();
+	}
+
+	/**
+	 * Mark the session finished, commit and release the file. A finished
+	 * journal is only waiting to be saved and is never resumed.
+	 */
+	public synchronized void finish() throws IOException {
+		if (mClosed) {
+			return;
+		}
+		mMap.putInt(OFFSET_FLAGS, mMap.getInt(OFFSET_FLAGS) | FLAG_FINISHED);
+		close();
+	}
+
+	public synchronized int getPointCount() {
+		return mPointCount;
+	}
+
+	public synchronized long getSessionId() {
+		return mMap.getLong(OFFSET_SESSION_ID);
+	}
+
+	public synchronized long getStartTimestamp() {
+		return mMap.getLong(OFFSET_START_TIMESTAMP);
+	}
+
+	public synchronized float getCalibrationLevel() {
+		return mMap.getFloat(OFFSET_CALIBRATION_LEVEL);
+	}
+
+	public synchronized double getX(final int index) {
+		return mMap.getDouble(HEADER_SIZE + index * RECORD_SIZE);
+	}
+
+	public synchronized double getY(final int index) {
+		return mMap.getDouble(HEADER_SIZE + index * RECORD_SIZE + 8);
+	}
+
+	/**
+	 * Read the features stored with the point at index into out. The sample
+	 * count and max are not stored; max is the point's y.
+	 */
+	public synchronized void getFeatures(final int index, final EpochFeatures out) {
+		final int offset = HEADER_SIZE + index * RECORD_SIZE;
+		out.clear();
+		out.max = (float) mMap.getDouble(offset + 8);
+		out.mean = mMap.getFloat(offset + RECORD_MEAN);
+		out.variance = mMap.getFloat(offset + RECORD_VARIANCE);
+		out.crossings = mMap.getInt(offset + RECORD_CROSSINGS);
+		out.activityCount = mMap.getFloat(offset + RECORD_ACTIVITY);
+	}
+
+	private void map(final int capacity) throws IOException {
+		mMap = mChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity
+				* RECORD_SIZE);
+		mCapacity = capacity;
+	}
+}
@@ -0,0 +1,123 @@
+package com.androsz.electricsleepbeta.util;
+
+import java.io.Serializable;
+
+/**
+ * Fixed-capacity window of x/y points backed by two primitive arrays. Adding a
+ * point to a full buffer evicts the oldest one in constant time and nothing is
+ * allocated per point.
+ *
+ * Indexes passed to {@link #getX(int)} and {@link #getY(int)} are logical: 0
+ * is always the oldest point still in the window. Readers use these accessors
+ * directly instead of copying the window out; hold the buffer's monitor for a
+ * consistent view across several calls.
+ */
+public final class XYRingBuffer implements Serializable {
+
+	private static final long serialVersionUID = -3022145823094418297L;
+
+	private final double[] mX;
+	private final double[] mY;
+
+	/** Physical index of the oldest point. */
+	private int mStart;
+	private int mSize;
+
+	public XYRingBuffer(final int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity must be positive: " + capacity);
+		}
+		mX = new double[capacity];
+		mY = new double[capacity];
+	}
+
+	/**
+	 * Append a point, evicting the oldest one if the buffer is full.
+	 */
+	public synchronized void add(final double x, final double y) {
+		final int capacity = mX.length;
+		int index = mStart + mSize;
+		if (index >= capacity) {
+			index -= capacity;
+		}
+		mX[index] = x;
+		mY[index] = y;
+		if (mSize == capacity) {
+			mStart = mStart + 1 == capacity ? 0 : mStart + 1;
+		} else {
+			mSize++;
+		}
+	}
+
+	/**
+	 * Replace the contents with the newest points of other.
+	 */
+	public void set(final XYRingBuffer other) {
+		synchronized (other) {
+			synchronized (this) {
+				clear();
+				final int size = other.mSize;
+				for (int i = Math.max(0, size - mX.length); i < size; i++) {
+					add(other.getX(i), other.getY(i));
+				}
+			}
+		}
+	}
+
+	public synchronized void clear() {
+		mStart = 0;
+		mSize = 0;
+	}
+
+	public int getCapacity() {
+		return mX.length;
+	}
+
+	public synchronized double getX(final int index) {
+		return mX[physicalIndex(index)];
+	}
+
+	public synchronized double getY(final int index) {
+		return mY[physicalIndex(index)];
+	}
+
+	public synchronized boolean isEmpty() {
+		return mSize == 0;
+	}
+
+	/**
+	 * Remove the point at index. The points on the shorter side of it move up
+	 * by one, so at most half the window is shifted.
+	 */
+	public synchronized void remove(final int index) {
+		physicalIndex(index);
+		if (index < mSize / 2) {
+			for (int i = index; i > 0; i--) {
+				move(physicalIndex(i - 1), physicalIndex(i));
+			}
+			mStart = mStart + 1 == mX.length ? 0 : mStart + 1;
+		} else {
+			for (int i = index; i < mSize - 1; i++) {
+				move(physicalIndex(i + 1), physicalIndex(i));
+			}
+		}
+		mSize--;
+	}
+
+	public synchronized int size() {
+		return mSize;
+	}
+
+	private void move(final int from, final int to) {
+		mX[to] = mX[from];
+		mY[to] = mY[from];
+	}
+
+	private int physicalIndex(final int index) {
+		if (index < 0 || index >= mSize) {
+			throw new IndexOutOfBoundsException("index " + index + ", size " + mSize);
+		}
+		final int physical = mStart + index;
+		return physical >= mX.length ? physical - mX.length : physical;
+	}
+}
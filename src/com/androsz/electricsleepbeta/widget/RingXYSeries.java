@@ -0,0 +1,119 @@
+package com.androsz.electricsleepbeta.widget;
+
+import java.util.List;
+
+import org.achartengine.model.PointD;
+import org.achartengine.model.XYSeries;
+
+import com.androsz.electricsleepbeta.util.XYRingBuffer;
+
+/**
+ * XYSeries whose points live in an {@link XYRingBuffer}, so that appending to
+ * a full live chart drops the oldest point without shifting the rest.
+ */
+final class RingXYSeries extends XYSeries {
+
+	private static final long serialVersionUID = 6871239527436128904L;
+
+	private XYRingBuffer mPoints;
+
+	RingXYSeries(final String title, final int capacity) {
+		super(title);
+		mPoints = new XYRingBuffer(capacity);
+	}
+
+	@Override
+	public synchronized void add(final double x, final double y) {
+		mPoints.add(x, y);
+	}
+
+	@Override
+	public synchronized void clear() {
+		mPoints.clear();
+	}
+
+	@Override
+	public synchronized int getItemCount() {
+		return mPoints.size();
+	}
+
+	@Override
+	public synchronized double getMaxX() {
+		final XYRingBuffer points = mPoints;
+		double max = -Double.MAX_VALUE;
+		for (int i = 0, n = points.size(); i < n; i++) {
+			max = Math.max(max, points.getX(i));
+		}
+		return max;
+	}
+
+	@Override
+	public synchronized double getMaxY() {
+		final XYRingBuffer points = mPoints;
+		double max = -Double.MAX_VALUE;
+		for (int i = 0, n = points.size(); i < n; i++) {
+			max = Math.max(max, points.getY(i));
+		}
+		return max;
+	}
+
+	@Override
+	public synchronized double getMinX() {
+		final XYRingBuffer points = mPoints;
+		double min = Double.MAX_VALUE;
+		for (int i = 0, n = points.size(); i < n; i++) {
+			min = Math.min(min, points.getX(i));
+		}
+		return min;
+	}
+
+	@Override
+	public synchronized double getMinY() {
+		final XYRingBuffer points = mPoints;
+		double min = Double.MAX_VALUE;
+		for (int i = 0, n = points.size(); i < n; i++) {
+			min = Math.min(min, points.getY(i));
+		}
+		return min;
+	}
+
+	@Override
+	public synchronized double getX(final int index) {
+		return mPoints.getX(index);
+	}
+
+	@Override
+	public synchronized double getY(final int index) {
+		return mPoints.getY(index);
+	}
+
+	@Override
+	public synchronized void remove(final int index) {
+		mPoints.remove(index);
+	}
+
+	/**
+	 * Replace the contents with the newest points of a live window.
+	 */
+	public synchronized void set(final XYRingBuffer points) {
+		mPoints.set(points);
+	}
+
+	/**
+	 * Replace the contents with a whole recorded session, growing the ring if
+	 * the session has more points than fit.
+	 */
+	@Override
+	public synchronized void setXY(final List<PointD> points) {
+		final int size = points.size();
+		if (size > mPoints.getCapacity()) {
+			mPoints = new XYRingBuffer(size);
+		} else {
+			mPoints.clear();
+		}
+		for (int i = 0; i < size; i++) {
+			final PointD point = points.get(i);
+			mPoints.add(point.x, point.y);
+		}
+	}
+}
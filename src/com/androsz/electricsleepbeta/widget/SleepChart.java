@@ -7,7 +7,6 @@ import java.util.List;
 import org.achartengine.GraphicalView;
 import org.achartengine.chart.AbstractChart;
 import org.achartengine.chart.TimeChart;
-import org.achartengine.model.PointD;
 import org.achartengine.model.XYMultipleSeriesDataset;
 import org.achartengine.renderer.XYMultipleSeriesRenderer;
 
@@ -22,8 +21,10 @@ import android.util.Log;
 
 import com.androsz.electricsleepbeta.R;
 import com.androsz.electricsleepbeta.app.SettingsActivity;
+import com.androsz.electricsleepbeta.app.SleepMonitoringService;
 import com.androsz.electricsleepbeta.db.SleepSession;
 import com.androsz.electricsleepbeta.util.MathUtils;
+import com.androsz.electricsleepbeta.util.XYRingBuffer;
 
 public class SleepChart extends GraphicalView {
 
@@ -60,6 +61,7 @@ public class SleepChart extends GraphicalView {
 	boolean mShowLabels;
 	boolean mShowLegend;
 	boolean mShowTitle = true;
+	boolean mShowAnnotations;
 
 	private String mAxisFormat;
 
@@ -136,6 +138,7 @@ public class SleepChart extends GraphicalView {
 		mShowLabels = array.getBoolean(R.styleable.SleepChart_showLabels, true);
 		mShowLegend = array.getBoolean(R.styleable.SleepChart_showLegend, true);
 		mShowTitle = array.getBoolean(R.styleable.SleepChart_showTitle, true);
+		mShowAnnotations = array.getBoolean(R.styleable.SleepChart_showAnnotations, false);
 
 		setupData();
 	}
@@ -221,21 +224,22 @@ public class SleepChart extends GraphicalView {
 		this.sync(new SleepSession(cursor));
 	}
 
-	public void sync(final Double x, final Double y) {
-		Log.d(TAG, "Syncing by adding a point. " + x + ", " + y);
-		mData.add(x, y);
+	public void sync(final double[] x, final double[] y, final int count) {
+		Log.d(TAG, "Syncing by adding " + count + " point(s).");
+		synchronized (mData) {
+			for (int i = 0; i < count; i++) {
+				mData.add(x[i], y[i]);
+			}
+		}
 		reconfigure();
 		repaint();
 	}
 
-	public void sync(List<PointD> points) {
-		Log.d(TAG, "Syncing by replacing the list of points, new length is "
+	public void sync(XYRingBuffer points) {
+		Log.d(TAG, "Syncing by replacing the live window, new length is "
 				+ points.size());
 		synchronized (mData) {
-			clear();
-			for (PointD point : points) {
-				mData.add(point.x, point.y);
-			}
+			mData.set(points);
 		}
 		reconfigure();
 		repaint();
@@ -244,14 +248,32 @@ public class SleepChart extends GraphicalView {
 	public void sync(final SleepSession sleepRecord) {
 		Log.d(TAG, "Attempting to sync with sleep record: " + sleepRecord);
 
-		mData.set(com.androsz.electricsleepbeta.util.PointD
-				.convertToNew(sleepRecord.getData()));
+		// this runs on the UI thread, so nothing is fetched here: the chart
+		// shows whatever the session's owner loaded, or else its preview. one
+		// point per pixel is as much as the chart can show.
+		final int width = getWidth() > 0 ? getWidth()
+				: SleepMonitoringService.MAX_POINTS_IN_A_GRAPH;
+		final List<com.androsz.electricsleepbeta.util.PointD> data = sleepRecord.getData(width);
+		if (data == null) {
+			Log.w(TAG, "Nothing to draw for sleep record: " + sleepRecord);
+			clear();
+			return;
+		}
+		mData.set(com.androsz.electricsleepbeta.util.PointD.convertToNew(data));
 
 		// TODO this need to take into account timezone information.
 		if (mShowTitle) {
 			mRenderer.setChartTitle(sleepRecord.getTitle(mContext));
 		}
 
+		// the labels and cycles are kept with the session's row, so they are
+		// here even when its data is not.
+		if (mShowAnnotations) {
+			mData.setAnnotations(sleepRecord.getStartTimestamp(),
+					sleepRecord.getSleepWakeLabels(), sleepRecord.getSleepCycleBoundaries(),
+					SettingsActivity.MAX_ALARM_SENSITIVITY);
+		}
+
 		// setCalibrationLevel currently reconfigures and repaints.
 		// if that changes, we will need a reconfigure and repaint here too.
 		setCalibrationLevelAndRedraw(sleepRecord.getCalibrationLevel());
@@ -307,8 +329,8 @@ public class SleepChart extends GraphicalView {
 			}
 
 			// add series to the dataset and renderer
-			mData.attachToDataset(mDataset);
-			mData.attachToRenderer(mRenderer);
+			mData.attachToDataset(mDataset, mShowAnnotations);
+			mData.attachToRenderer(mRenderer, mShowAnnotations);
 		}
 
 		final float textSize = MathUtils.calculatePxFromSp(mContext, 14);
@@ -26,7 +26,10 @@ import android.os.Parcelable;
 import android.util.Log;
 
 import com.androsz.electricsleepbeta.R;
+import com.androsz.electricsleepbeta.analysis.SleepWakeClassifier;
+import com.androsz.electricsleepbeta.analysis.SleepWakeScorer;
 import com.androsz.electricsleepbeta.app.SleepMonitoringService;
+import com.androsz.electricsleepbeta.util.XYRingBuffer;
 
 /**
  * Data container for sleep chart points and information. This class is
@@ -47,12 +50,20 @@ public class SleepChartData implements Parcelable {
 	 */
 	private boolean mNeedsClear;
 
-	private XYSeries mXYSeriesMovement;
+	private RingXYSeries mXYSeriesMovement;
 	private XYSeries mXYSeriesCalibration;
 
 	private XYSeriesRenderer mXYSeriesCalibrationRenderer;
 	private XYSeriesRenderer mXYSeriesMovementRenderer;
 
+	/** Shades the minutes a saved session was scored awake. */
+	private XYSeries mXYSeriesWake;
+	/** Marks the ends of a saved session's sleep cycles. */
+	private XYSeries mXYSeriesCycles;
+
+	private XYSeriesRenderer mXYSeriesWakeRenderer;
+	private XYSeriesRenderer mXYSeriesCyclesRenderer;
+
 	private float mCalibrationLevel;
 
 	public float getCalibrationLevel() {
@@ -79,8 +90,9 @@ public class SleepChartData implements Parcelable {
 	 * extract default strings used for movement and calibration legends.
 	 */
 	public SleepChartData(final Context context) {
-		mXYSeriesMovement = new XYSeries(
-				context.getString(R.string.legend_movement));
+		mXYSeriesMovement = new RingXYSeries(
+				context.getString(R.string.legend_movement),
+				SleepMonitoringService.MAX_POINTS_IN_A_GRAPH);
 		// WARNING - the movement must be populated with some initial data in
 		// order for this view to
 		// properly render.
@@ -96,14 +108,31 @@ public class SleepChartData implements Parcelable {
 		mXYSeriesCalibrationRenderer = new XYSeriesRenderer();
 		mXYSeriesCalibrationRenderer.setFillBelowLine(true);
 		mXYSeriesCalibrationRenderer.setLineWidth(3);
+
+		final int wakeColor = context.getResources().getColor(R.color.sleepchart_wake);
+		mXYSeriesWake = new XYSeries(context.getString(R.string.legend_awake));
+		mXYSeriesWakeRenderer = new XYSeriesRenderer();
+		mXYSeriesWakeRenderer.setFillBelowLine(true);
+		mXYSeriesWakeRenderer.setFillBelowLineColor(wakeColor);
+		mXYSeriesWakeRenderer.setColor(wakeColor);
+
+		mXYSeriesCycles = new XYSeries(context.getString(R.string.legend_sleep_cycle));
+		mXYSeriesCyclesRenderer = new XYSeriesRenderer();
+		mXYSeriesCyclesRenderer.setColor(context.getResources().getColor(
+				R.color.sleepchart_cycle));
+		mXYSeriesCyclesRenderer.setLineWidth(2);
 	}
 
 	private SleepChartData(Parcel in) {
-		mXYSeriesMovement = (XYSeries) in.readSerializable();
+		mXYSeriesMovement = (RingXYSeries) in.readSerializable();
 		mXYSeriesMovementRenderer = (XYSeriesRenderer) in.readSerializable();
 		mXYSeriesCalibration = (XYSeries) in.readSerializable();
 		mXYSeriesCalibrationRenderer = (XYSeriesRenderer) in.readSerializable();
 		mCalibrationLevel = in.readFloat();
+		mXYSeriesWake = (XYSeries) in.readSerializable();
+		mXYSeriesWakeRenderer = (XYSeriesRenderer) in.readSerializable();
+		mXYSeriesCycles = (XYSeries) in.readSerializable();
+		mXYSeriesCyclesRenderer = (XYSeriesRenderer) in.readSerializable();
 	}
 
 	public void add(double x, double y) {
@@ -111,12 +140,16 @@ public class SleepChartData implements Parcelable {
 			if (mNeedsClear) {
 				mXYSeriesMovement.clear();
 				mNeedsClear = false;
+			} else {
+				// a live update can repeat a point that was already synced
+				// from the service's window.
+				final int count = mXYSeriesMovement.getItemCount();
+				if (count > 0 && x <= mXYSeriesMovement.getX(count - 1)) {
+					return;
+				}
 			}
 
-			if (mXYSeriesMovement.getItemCount() >= SleepMonitoringService.MAX_POINTS_IN_A_GRAPH) {
-				mXYSeriesMovement.remove(0);
-			}
-			
+			// the series drops its oldest point once it is full
 			mXYSeriesMovement.add(x, y);
 
 		}
@@ -153,6 +186,54 @@ public class SleepChartData implements Parcelable {
 		mXYSeriesMovement.setXY(points);
 	}
 
+	/**
+	 * Replace the movement series with the contents of a live window.
+	 */
+	public void set(XYRingBuffer points) {
+		synchronized (mXYSeriesMovement) {
+			mXYSeriesMovement.set(points);
+			mNeedsClear = false;
+		}
+	}
+
+	/**
+	 * Annotate the session that started at startTime, drawing up to height:
+	 * the minutes sleepWake labels awake are shaded and each cycle boundary
+	 * is a vertical line. Either may be null, as for sessions saved before
+	 * they were stored, and is then left out.
+	 */
+	public void setAnnotations(final long startTime, final byte[] sleepWake,
+			final long[] cycleBoundaries, final double height) {
+		synchronized (mXYSeriesWake) {
+			mXYSeriesWake.clear();
+			if (sleepWake != null) {
+				// a step that is height while awake and 0 otherwise.
+				boolean wasAwake = false;
+				for (int i = 0; i <= sleepWake.length; i++) {
+					final boolean awake = i < sleepWake.length
+							&& sleepWake[i] == SleepWakeClassifier.WAKE;
+					if (awake != wasAwake) {
+						final double x = startTime + i * SleepWakeScorer.EPOCH_MILLIS;
+						mXYSeriesWake.add(x, awake ? 0 : height);
+						mXYSeriesWake.add(x, awake ? height : 0);
+						wasAwake = awake;
+					}
+				}
+			}
+		}
+
+		synchronized (mXYSeriesCycles) {
+			mXYSeriesCycles.clear();
+			if (cycleBoundaries != null) {
+				for (final long boundary : cycleBoundaries) {
+					mXYSeriesCycles.add(boundary, 0);
+					mXYSeriesCycles.add(boundary, height);
+					mXYSeriesCycles.add(boundary, 0);
+				}
+			}
+		}
+	}
+
 	public void setupCalibrationSpan(double left, double right) {
 		final float calibrationLevel = getCalibrationLevel();
 
@@ -169,6 +250,8 @@ public class SleepChartData implements Parcelable {
 		Log.d(TAG, "Clearing sleep chart.");
 		mXYSeriesMovement.clear();
 		mXYSeriesCalibration.clear();
+		mXYSeriesWake.clear();
+		mXYSeriesCycles.clear();
 	}
 
 	@Override
@@ -188,17 +271,41 @@ public class SleepChartData implements Parcelable {
 		dest.writeSerializable(mXYSeriesCalibration);
 		dest.writeSerializable(mXYSeriesCalibrationRenderer);
 		dest.writeFloat(mCalibrationLevel);
+		dest.writeSerializable(mXYSeriesWake);
+		dest.writeSerializable(mXYSeriesWakeRenderer);
+		dest.writeSerializable(mXYSeriesCycles);
+		dest.writeSerializable(mXYSeriesCyclesRenderer);
 	}
 
-	public void attachToDataset(XYMultipleSeriesDataset dataset) {
+	/**
+	 * Add the series to dataset, with the annotations if annotated: the
+	 * shading behind the movement and the cycle lines in front of it.
+	 */
+	public void attachToDataset(XYMultipleSeriesDataset dataset, boolean annotated) {
+		if (annotated) {
+			dataset.addSeries(mXYSeriesWake);
+		}
 		dataset.addSeries(mXYSeriesMovement);
 		dataset.addSeries(mXYSeriesCalibration);
+		if (annotated) {
+			dataset.addSeries(mXYSeriesCycles);
+		}
 	}
 
-	public void attachToRenderer(XYMultipleSeriesRenderer mRenderer) {
+	/**
+	 * Add the series renderers in the order of
+	 * {@link #attachToDataset(XYMultipleSeriesDataset, boolean)}.
+	 */
+	public void attachToRenderer(XYMultipleSeriesRenderer mRenderer, boolean annotated) {
 		// set up the dataset renderer
+		if (annotated) {
+			mRenderer.addSeriesRenderer(mXYSeriesWakeRenderer);
+		}
 		mRenderer.addSeriesRenderer(mXYSeriesMovementRenderer);
 		mRenderer.addSeriesRenderer(mXYSeriesCalibrationRenderer);
+		if (annotated) {
+			mRenderer.addSeriesRenderer(mXYSeriesCyclesRenderer);
+		}
 	}
 
 	public void setSeriesColors(int mMovementColor, int mMovementBorderColor,
@@ -1,8 +1,5 @@
 package com.androsz.electricsleepbeta.widget;
 
-import java.io.IOException;
-import java.io.StreamCorruptedException;
-
 import android.content.Context;
 import android.database.Cursor;
 import android.support.v4.widget.ResourceCursorAdapter;
@@ -20,6 +17,9 @@ public class SleepHistoryCursorAdapter extends ResourceCursorAdapter {
 
     private ViewGroup parent;
 
+    private SleepSession.Columns mColumns;
+    private Cursor mColumnsCursor;
+
     public SleepHistoryCursorAdapter(final Context context, final Cursor cursor) {
         super(context, LAYOUT, cursor, true);
     }
@@ -28,7 +28,12 @@ public class SleepHistoryCursorAdapter extends ResourceCursorAdapter {
     public void bindView(final View view, final Context context,
             final Cursor cursor) {
 
-        final SleepSession session = new SleepSession(cursor);
+        // one lookup of the column positions serves every row of a cursor.
+        if (cursor != mColumnsCursor) {
+            mColumns = new SleepSession.Columns(cursor);
+            mColumnsCursor = cursor;
+        }
+        final SleepSession session = new SleepSession(cursor, mColumns);
         ((TextView) view.findViewById(R.id.date)).setText(session
                 .getDayText(context));
         ((TextView) view.findViewById(R.id.duration)).setText(context
@@ -42,19 +47,10 @@ public class SleepHistoryCursorAdapter extends ResourceCursorAdapter {
         sleepChart.setScroll(true);
 
         try {
-            sleepChart.sync(cursor);
-        } catch (final StreamCorruptedException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
+            sleepChart.sync(session);
         } catch (final IllegalArgumentException e) {
             // TODO Auto-generated catch block
             e.printStackTrace();
-        } catch (final IOException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
-        } catch (final ClassNotFoundException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
         }
     }
 
@@ -0,0 +1,108 @@
+package com.androsz.electricsleepbeta.analysis;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import org.junit.Test;
+
+/**
+ * Labels worked by hand from Cole et al. (1992), one-minute epochs:
+ * D = 0.001 (106 A-4 + 54 A-3 + 58 A-2 + 76 A-1 + 230 A0 + 74 A+1 + 67 A+2)
+ * with A the count / 100 capped at 300, and wake when D >= 1.
+ */
+public class ColeKripkeClassifierTest {
+
+	private final SleepWakeClassifier mClassifier = new ColeKripkeClassifier();
+
+	@Test
+	public void stillNightIsAsleep() {
+		assertArrayEquals(labels("SSSSSSSSSS"), classify(new float[10]));
+	}
+
+	@Test
+	public void spikeWakesItsMinuteAndTheFourthAfter() {
+		// A = 10 at minute 5. D at minutes 3 to 9 is 0.67, 0.74, 2.3, 0.76,
+		// 0.58, 0.54 and 1.06.
+		final float[] counts = new float[10];
+		counts[5] = 1000;
+		assertArrayEquals(labels("SSSSSWSSSW"), classify(counts));
+	}
+
+	@Test
+	public void restlessStretchIsAwake() {
+		// A = 2.5 for minutes 3 to 6. D at minute 3 is
+		// 0.0025 * (230 + 74 + 67) = 0.93, at minute 4
+		// 0.0025 * (76 + 230 + 74 + 67) = 1.12, at minute 5
+		// 0.0025 * (58 + 76 + 230 + 74) = 1.10, at minute 6
+		// 0.0025 * (54 + 58 + 76 + 230) = 1.05 and at minute 7
+		// 0.0025 * (106 + 54 + 58 + 76) = 0.74.
+		final float[] counts = { 0, 0, 0, 250, 250, 250, 250, 0, 0, 0 };
+		assertArrayEquals(labels("SSSSWWWSSS"), classify(counts));
+	}
+
+	@Test
+	public void countsAreCapped() {
+		final float[] capped = new float[10];
+		capped[5] = 30000;
+		final float[] huge = new float[10];
+		huge[5] = 1e9f;
+		assertArrayEquals(classify(capped), classify(huge));
+	}
+
+	@Test
+	public void wakeCountIsTheThresholdOfALoneMinute() {
+		final float[] counts = new float[9];
+		counts[4] = mClassifier.getWakeCount();
+		assertArrayEquals(labels("SSSSWSSSS"), classify(counts));
+		counts[4] = mClassifier.getWakeCount() - 1;
+		assertArrayEquals(labels("SSSSSSSSS"), classify(counts));
+	}
+
+	@Test
+	public void shortNightsCountMissingNeighboursAsStill() {
+		assertArrayEquals(labels("W"), classify(new float[] { 435 }));
+		assertArrayEquals(labels("S"), classify(new float[] { 434 }));
+		// D = 0.001 * 74 * 5 = 0.37 and 0.001 * 230 * 5 = 1.15.
+		assertArrayEquals(labels("SW"), classify(new float[] { 0, 500 }));
+	}
+
+	@Test
+	public void emptyNightWritesNothing() {
+		final byte[] out = { SleepWakeClassifier.UNKNOWN };
+		mClassifier.classify(new float[0], 0, out);
+		assertArrayEquals(labels("?"), out);
+	}
+
+	@Test
+	public void onlyTheFirstCountCountsAreRead() {
+		final float[] counts = { 0, 0, 100000 };
+		final byte[] out = new byte[2];
+		mClassifier.classify(counts, 2, out);
+		assertArrayEquals(labels("SS"), out);
+	}
+
+	private byte[] classify(final float[] counts) {
+		final byte[] out = new byte[counts.length];
+		mClassifier.classify(counts, counts.length, out);
+		return out;
+	}
+
+	/**
+	 * S for sleep, W for wake and ? for unknown.
+	 */
+	static byte[] labels(final String labels) {
+		final byte[] out = new byte[labels.length()];
+		for (int i = 0; i < out.length; i++) {
+			switch (labels.charAt(i)) {
+			case 'S':
+				out[i] = SleepWakeClassifier.SLEEP;
+				break;
+			case 'W':
+				out[i] = SleepWakeClassifier.WAKE;
+				break;
+			default:
+				out[i] = SleepWakeClassifier.UNKNOWN;
+			}
+		}
+		return out;
+	}
+}
@@ -0,0 +1,95 @@
+package com.androsz.electricsleepbeta.analysis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class MovementFeatureExtractorTest {
+
+	private static final float G = 9.81f;
+
+	/** SENSOR_DELAY_NORMAL's period. */
+	private static final long PERIOD_NANOS = 200 * 1000 * 1000L;
+
+	@Test
+	public void warmsUpBeforeMeasuring() {
+		final MovementFeatureExtractor extractor = new MovementFeatureExtractor();
+		for (int i = 1; i <= MovementFeatureExtractor.DEFAULT_WARM_UP_SAMPLES; i++) {
+			assertFalse(extractor.isWarmedUp());
+			// wildly off samples while the sensor settles are not measured.
+			assertEquals(0, extractor.addSample(i * 10, 0, G, i * PERIOD_NANOS), 0);
+		}
+		assertTrue(extractor.isWarmedUp());
+	}
+
+	@Test
+	public void stillPhoneDoesNotMove() {
+		final MovementFeatureExtractor extractor = warmedUp(1);
+		for (int i = 1; i <= 100; i++) {
+			assertEquals(0, extractor.addSample(0, 0, G, i * PERIOD_NANOS), 0);
+		}
+	}
+
+	@Test
+	public void filtersGravityByElapsedTime() {
+		// at the default time constant a 200ms step weighs 0.2: gravity moves
+		// to x = 0.2, leaving 0.8 of the sample's x.
+		assertEquals(0.8f, warmedUp(1).addSample(1, 0, G, PERIOD_NANOS), 1e-6f);
+		// half the step weighs 1/9.
+		assertEquals(8f / 9, warmedUp(1).addSample(1, 0, G, PERIOD_NANOS / 2), 1e-6f);
+	}
+
+	@Test
+	public void repeatedTimestampLeavesGravityAlone() {
+		assertEquals(1f, warmedUp(PERIOD_NANOS).addSample(1, 0, G, PERIOD_NANOS), 1e-6f);
+	}
+
+	@Test
+	public void replayMatchesLiveSamples() {
+		final int count = 500;
+		final float[] xyz = new float[count * 3];
+		final long[] timestamps = new long[count];
+		for (int i = 0; i < count; i++) {
+			xyz[i * 3] = (float) Math.sin(i / 7.0);
+			xyz[i * 3 + 1] = (float) Math.cos(i / 11.0) * 0.5f;
+			xyz[i * 3 + 2] = G + (i % 50 == 0 ? 3 : 0);
+			// the rate changes halfway through the night.
+			timestamps[i] = i < count / 2 ? i * PERIOD_NANOS : count / 2 * PERIOD_NANOS
+					+ (i - count / 2) * PERIOD_NANOS / 4;
+		}
+
+		final MovementFeatureExtractor live = new MovementFeatureExtractor();
+		float liveMax = 0;
+		for (int i = 0; i < count; i++) {
+			liveMax = Math.max(liveMax,
+					live.addSample(xyz[i * 3], xyz[i * 3 + 1], xyz[i * 3 + 2], timestamps[i]));
+		}
+
+		// replayed in two runs, as a recording read in chunks would be.
+		final MovementFeatureExtractor replayed = new MovementFeatureExtractor();
+		final float firstMax = replayed.replay(xyz, timestamps, 0, 123);
+		final float secondMax = replayed.replay(xyz, timestamps, 123, count - 123);
+		assertTrue(liveMax > 0);
+		assertEquals(liveMax, Math.max(firstMax, secondMax), 0);
+		assertEquals(live.addSample(0, 0, G, count * PERIOD_NANOS),
+				replayed.addSample(0, 0, G, count * PERIOD_NANOS), 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsNoTimeConstant() {
+		new MovementFeatureExtractor(0, 1);
+	}
+
+	/**
+	 * An extractor whose gravity is seeded straight down, by a single sample
+	 * at timestampNanos.
+	 */
+	private static MovementFeatureExtractor warmedUp(final long timestampNanos) {
+		final MovementFeatureExtractor extractor = new MovementFeatureExtractor(
+				MovementFeatureExtractor.DEFAULT_TIME_CONSTANT_NANOS, 1);
+		extractor.addSample(0, 0, G, timestampNanos);
+		return extractor;
+	}
+}
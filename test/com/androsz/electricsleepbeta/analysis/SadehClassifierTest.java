@@ -0,0 +1,86 @@
+package com.androsz.electricsleepbeta.analysis;
+
+import static com.androsz.electricsleepbeta.analysis.ColeKripkeClassifierTest.labels;
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Labels worked by hand from Sadeh et al. (1994):
+ * PS = 7.601 - 0.065 MW5 - 1.08 NAT - 0.056 SD6 - 0.703 LG, sleep when
+ * PS >= 0, with the windows cut short at either end of the night.
+ */
+public class SadehClassifierTest {
+
+	private final SleepWakeClassifier mClassifier = new SadehClassifier();
+
+	@Test
+	public void stillNightIsAsleep() {
+		// PS = 7.601 throughout.
+		assertArrayEquals(labels("SSSSSSSSSSS"), classify(new float[11]));
+	}
+
+	@Test
+	public void steadyQuietMovementIsAsleep() {
+		// MW5 = 30, NAT = 0, SD6 = 0 and LG = ln 31: PS = 7.601 - 1.95 -
+		// 2.41 = 3.24.
+		final float[] counts = new float[11];
+		Arrays.fill(counts, 30);
+		assertArrayEquals(labels("SSSSSSSSSSS"), classify(counts));
+	}
+
+	@Test
+	public void steadyMovementInTheNatRangeIsAwake() {
+		// MW5 = 60 and LG = ln 61 = 4.11; at the first minute NAT = 6, so
+		// PS = 7.601 - 3.9 - 6.48 - 2.89 = -5.67, and more NAT only lowers it.
+		final float[] counts = new float[11];
+		Arrays.fill(counts, 60);
+		assertArrayEquals(labels("WWWWWWWWWWW"), classify(counts));
+	}
+
+	@Test
+	public void wakeCountIsTheThresholdOfALoneMinute() {
+		// at 143 the minute has MW5 = 13, SD6 = 58.4 and LG = 4.97, so
+		// PS = 7.601 - 0.85 - 3.27 - 3.49 = -0.01; its neighbours keep their
+		// LG of 0 and stay asleep.
+		final float[] counts = new float[11];
+		counts[5] = mClassifier.getWakeCount();
+		assertArrayEquals(labels("SSSSSWSSSSS"), classify(counts));
+		counts[5] = mClassifier.getWakeCount() - 1;
+		assertArrayEquals(labels("SSSSSSSSSSS"), classify(counts));
+	}
+
+	@Test
+	public void countsAreCapped() {
+		final float[] capped = { 0, 0, 300, 0, 0, 300, 300, 0 };
+		final float[] huge = { 0, 0, 5000, 0, 0, 300, 1e9f, 0 };
+		assertArrayEquals(classify(capped), classify(huge));
+	}
+
+	@Test
+	public void shortNightsCutTheWindowsShort() {
+		// every window holds the whole night, so MW5 = 66.7 and NAT = 0. The
+		// first two minutes have no deviation and LG = 0: PS = 3.27. The
+		// last has SD6 = 115.5 and LG = ln 201: PS = 7.601 - 4.33 - 6.47 -
+		// 3.73 = -6.93.
+		assertArrayEquals(labels("SSW"), classify(new float[] { 0, 0, 200 }));
+		assertArrayEquals(labels("S"), classify(new float[] { 0 }));
+		// alone: MW5 = 300, LG = ln 301, PS = 7.601 - 19.5 - 4.01 < 0.
+		assertArrayEquals(labels("W"), classify(new float[] { 300 }));
+	}
+
+	@Test
+	public void emptyNightWritesNothing() {
+		final byte[] out = { SleepWakeClassifier.UNKNOWN };
+		mClassifier.classify(new float[0], 0, out);
+		assertArrayEquals(labels("?"), out);
+	}
+
+	private byte[] classify(final float[] counts) {
+		final byte[] out = new byte[counts.length];
+		mClassifier.classify(counts, counts.length, out);
+		return out;
+	}
+}
@@ -0,0 +1,136 @@
+package com.androsz.electricsleepbeta.analysis;
+
+import static com.androsz.electricsleepbeta.analysis.ColeKripkeClassifierTest.labels;
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Binning epochs into minutes, scaling by the calibration level and gaps.
+ */
+public class SleepWakeScorerTest {
+
+	private static final float CALIBRATION = 0.5f;
+	private static final long START = 1000000;
+
+	/**
+	 * Epochs at given times with y and activity, in the order added.
+	 */
+	private static final class Epochs implements ActivitySource {
+		private final List<double[]> mEpochs = new ArrayList<double[]>();
+
+		Epochs add(final long x, final double y, final float activity) {
+			mEpochs.add(new double[] { x, y, activity });
+			return this;
+		}
+
+		/** Two still epochs in each minute from first to last. */
+		Epochs still(final int first, final int last) {
+			for (int minute = first; minute <= last; minute++) {
+				moving(minute, 0);
+			}
+			return this;
+		}
+
+		/** Two epochs in minute moving at activity. */
+		Epochs moving(final int minute, final float activity) {
+			add(START + minute * SleepWakeScorer.EPOCH_MILLIS, activity, activity);
+			return add(START + minute * SleepWakeScorer.EPOCH_MILLIS + 30000, activity, activity);
+		}
+
+		@Override
+		public int size() {
+			return mEpochs.size();
+		}
+
+		@Override
+		public double getX(final int index) {
+			return mEpochs.get(index)[0];
+		}
+
+		@Override
+		public double getY(final int index) {
+			return mEpochs.get(index)[1];
+		}
+
+		@Override
+		public float getActivity(final int index) {
+			return (float) mEpochs.get(index)[2];
+		}
+	}
+
+	private static byte[] score(final SleepWakeClassifier classifier, final Epochs epochs) {
+		return new SleepWakeScorer(classifier, CALIBRATION).score(epochs, START);
+	}
+
+	@Test
+	public void minuteAtTheCalibrationLevelIsAwake() {
+		final Epochs epochs = new Epochs().still(0, 4).moving(5, CALIBRATION).still(6, 10);
+		assertArrayEquals(labels("SSSSSWSSSSS"), score(new ColeKripkeClassifier(), epochs));
+		assertArrayEquals(labels("SSSSSWSSSSS"), score(new SadehClassifier(), epochs));
+	}
+
+	@Test
+	public void minuteBelowTheCalibrationLevelAloneIsAsleep() {
+		final Epochs epochs = new Epochs().still(0, 4).moving(5, CALIBRATION * 0.9f)
+				.still(6, 10);
+		assertArrayEquals(labels("SSSSSSSSSSS"), score(new ColeKripkeClassifier(), epochs));
+		assertArrayEquals(labels("SSSSSSSSSSS"), score(new SadehClassifier(), epochs));
+	}
+
+	@Test
+	public void epochsOfAMinuteAreAveraged() {
+		// the mean of the two epochs is the calibration level.
+		final Epochs epochs = new Epochs().still(0, 4)
+				.add(START + 5 * SleepWakeScorer.EPOCH_MILLIS, 0, 0)
+				.add(START + 5 * SleepWakeScorer.EPOCH_MILLIS + 30000, 1, 2 * CALIBRATION)
+				.still(6, 8);
+		assertArrayEquals(labels("SSSSSWSSS"), score(new ColeKripkeClassifier(), epochs));
+	}
+
+	@Test
+	public void minutesInAGapAreUnknownAndCountAsStill() {
+		// minutes 3 and 4 are a gap: they are labelled unknown and scored as
+		// no activity, so they do not wake their neighbours.
+		final Epochs epochs = new Epochs().still(0, 1).moving(2, CALIBRATION * 0.9f)
+				.add(START + 3 * SleepWakeScorer.EPOCH_MILLIS, Double.NaN, 0).still(5, 7);
+		assertArrayEquals(labels("SSS??SSS"), score(new ColeKripkeClassifier(), epochs));
+	}
+
+	@Test
+	public void trailingGapDoesNotLengthenTheNight() {
+		final Epochs epochs = new Epochs().still(0, 2)
+				.add(START + 5 * SleepWakeScorer.EPOCH_MILLIS, Double.NaN, 0);
+		assertArrayEquals(labels("SSS"), score(new ColeKripkeClassifier(), epochs));
+	}
+
+	@Test
+	public void epochsBeforeTheStartAreLeftOut() {
+		final Epochs epochs = new Epochs().add(START - 30000, 1, 100).still(0, 2);
+		assertArrayEquals(labels("SSS"), score(new ColeKripkeClassifier(), epochs));
+	}
+
+	@Test
+	public void shortNightsAreScored() {
+		assertArrayEquals(labels("W"),
+				score(new ColeKripkeClassifier(), new Epochs().moving(0, CALIBRATION)));
+		assertArrayEquals(labels("S"), score(new SadehClassifier(), new Epochs().still(0, 0)));
+	}
+
+	@Test
+	public void nightWithoutEpochsHasNoLabels() {
+		assertArrayEquals(new byte[0], score(new ColeKripkeClassifier(), new Epochs()));
+		assertArrayEquals(new byte[0], score(new ColeKripkeClassifier(),
+				new Epochs().add(START, Double.NaN, 0)));
+	}
+
+	@Test
+	public void uncalibratedNightIsAsleep() {
+		final Epochs epochs = new Epochs().still(0, 1).moving(2, 1);
+		assertArrayEquals(labels("SSS"), new SleepWakeScorer(new ColeKripkeClassifier(), 0)
+				.score(epochs, START));
+	}
+}
@@ -0,0 +1,161 @@
+package com.androsz.electricsleepbeta.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.androsz.electricsleepbeta.util.PointD;
+
+/**
+ * The codec keeps x to whole milliseconds and y to a ten thousandth, so round
+ * trips are compared to those.
+ */
+public class SleepDataCodecTest {
+
+	private static final long NIGHT_START = 1325397600000L;
+
+	@Test
+	public void roundTripsANight() throws Exception {
+		final List<PointD> night = night(5760, 5000);
+		assertRoundTrips(night, SleepDataCodec.decode(SleepDataCodec.encode(night)).toList());
+	}
+
+	@Test
+	public void roundsToTheStoredPrecision() {
+		final List<PointD> points = new ArrayList<PointD>();
+		points.add(new PointD(NIGHT_START + 0.4, 0.12344));
+		points.add(new PointD(NIGHT_START + 1000.6, 0.12346));
+		final SleepDataCodec.Points decoded = SleepDataCodec.decode(SleepDataCodec
+				.encode(points));
+		assertEquals(NIGHT_START, decoded.x[0], 0);
+		assertEquals(NIGHT_START + 1001, decoded.x[1], 0);
+		assertEquals(0.1234, decoded.y[0], 1e-6);
+		assertEquals(0.1235, decoded.y[1], 1e-6);
+	}
+
+	@Test
+	public void keepsGaps() {
+		final List<PointD> points = night(10, 60000);
+		points.get(0).y = Double.NaN;
+		points.get(4).y = Double.NaN;
+		points.get(9).y = Double.NaN;
+		assertRoundTrips(points, SleepDataCodec.decode(SleepDataCodec.encode(points)).toList());
+	}
+
+	@Test
+	public void keepsAnEmptyNight() {
+		final byte[] encoded = SleepDataCodec.encode(new ArrayList<PointD>());
+		assertTrue(SleepDataCodec.isEncoded(encoded));
+		assertEquals(0, SleepDataCodec.decode(encoded).size());
+	}
+
+	@Test
+	public void keepsLargeAndNegativeStepChanges() {
+		final long[] times = { NIGHT_START, NIGHT_START + 5000, NIGHT_START + 5000,
+				NIGHT_START + 86400000L * 30, NIGHT_START - 1, 0, Long.MAX_VALUE / 4 };
+		final List<PointD> points = new ArrayList<PointD>();
+		for (int i = 0; i < times.length; i++) {
+			points.add(new PointD(times[i], -i));
+		}
+		assertRoundTrips(points, SleepDataCodec.decode(SleepDataCodec.encode(points)).toList());
+	}
+
+	@Test
+	public void readsSerializedLists() throws Exception {
+		final ArrayList<PointD> night = night(100, 60000);
+		final byte[] serialized = serialize(night);
+		assertFalse(SleepDataCodec.isEncoded(serialized));
+
+		final List<PointD> decoded = SleepDataCodec.decodeList(serialized);
+		assertEquals(night.size(), decoded.size());
+		for (int i = 0; i < night.size(); i++) {
+			assertEquals(night.get(i).x, decoded.get(i).x, 0);
+			assertEquals(night.get(i).y, decoded.get(i).y, 0);
+		}
+	}
+
+	@Test
+	public void readsEncodedLists() throws Exception {
+		final ArrayList<PointD> night = night(100, 60000);
+		assertRoundTrips(night, SleepDataCodec.decodeList(SleepDataCodec.encode(night)));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsSerializedListsInDecode() throws Exception {
+		SleepDataCodec.decode(serialize(night(10, 60000)));
+	}
+
+	@Test
+	public void rejectsTruncatedData() {
+		final byte[] encoded = SleepDataCodec.encode(night(100, 60000));
+		for (int length = 3; length < encoded.length; length++) {
+			final byte[] truncated = new byte[length];
+			System.arraycopy(encoded, 0, truncated, 0, length);
+			try {
+				SleepDataCodec.decode(truncated);
+				fail("Decoded " + length + " of " + encoded.length + " bytes");
+			} catch (final IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsUnknownVersions() {
+		final byte[] encoded = SleepDataCodec.encode(night(10, 60000));
+		encoded[2]++;
+		SleepDataCodec.decode(encoded);
+	}
+
+	@Test
+	public void isSmallerThanASerializedList() throws Exception {
+		// an eight hour night of five second epochs takes a few bytes a point.
+		final ArrayList<PointD> night = night(5760, 5000);
+		final int encoded = SleepDataCodec.encode(night).length;
+		assertTrue("encoded in " + encoded + " bytes", encoded < 4 * night.size());
+		assertTrue(encoded * 5 < serialize(night).length);
+	}
+
+	private static void assertRoundTrips(final List<PointD> expected, final List<PointD> actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals("x of " + i, Math.round(expected.get(i).x), actual.get(i).x, 0);
+			if (Double.isNaN(expected.get(i).y)) {
+				assertTrue("y of " + i, Double.isNaN(actual.get(i).y));
+			} else {
+				assertEquals("y of " + i, expected.get(i).y, actual.get(i).y, 0.5e-4 + 1e-6);
+			}
+		}
+	}
+
+	/**
+	 * A night of count points a step apart, with a little jitter in both.
+	 */
+	private static ArrayList<PointD> night(final int count, final long step) {
+		final ArrayList<PointD> points = new ArrayList<PointD>(count);
+		long time = NIGHT_START;
+		for (int i = 0; i < count; i++) {
+			final double movement = (i * 7919 % 1000) / 1000.0 * (i % 60 < 5 ? 50 : 1);
+			points.add(new PointD(time, movement));
+			time += step + (i % 13 == 0 ? 3 : 0);
+		}
+		return points;
+	}
+
+	private static byte[] serialize(final Object object) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(object);
+		out.close();
+		return bytes.toByteArray();
+	}
+}
@@ -0,0 +1,147 @@
+package com.androsz.electricsleepbeta.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+/**
+ * Timestamps and the bits of values come back exactly; the pyramid rounds x to
+ * whole milliseconds before it gets here.
+ */
+public class GorillaEncoderTest {
+
+	private static final long NIGHT_START = 1325397600000L;
+
+	@Test
+	public void roundTripsANight() {
+		final int count = 5760;
+		final long[] timestamps = new long[count];
+		final double[] values = new double[count];
+		long time = NIGHT_START;
+		for (int i = 0; i < count; i++) {
+			timestamps[i] = time;
+			values[i] = (i * 7919 % 1000) / 1000.0 * (i % 60 < 5 ? 50 : 1);
+			time += 5000 + (i % 13 == 0 ? 3 : 0);
+		}
+		assertRoundTrips(timestamps, values);
+	}
+
+	@Test
+	public void keepsAnEmptyBlock() {
+		final byte[] block = new GorillaEncoder(0).toByteArray();
+		assertEquals(4, block.length);
+		final GorillaDecoder decoder = new GorillaDecoder(ByteBuffer.wrap(block));
+		assertEquals(0, decoder.size());
+		assertFalse(decoder.next());
+	}
+
+	@Test
+	public void keepsASinglePoint() {
+		assertRoundTrips(new long[] { NIGHT_START }, new double[] { 0.5 });
+	}
+
+	@Test
+	public void keepsGaps() {
+		assertRoundTrips(new long[] { 0, 1000, 2000, 3000, 4000 }, new double[] { Double.NaN,
+				1, Double.NaN, Double.NaN, 2 });
+	}
+
+	@Test
+	public void keepsRepeatedValues() {
+		assertRoundTrips(new long[] { 0, 1000, 2000, 3000 }, new double[] { 7, 7, 7, 7 });
+	}
+
+	@Test
+	public void keepsAXorOfAllSixtyFourBits() {
+		// differs from 1.0 in its first and last bits, so no zero is left to
+		// trim on either side.
+		final double flipped = Double.longBitsToDouble(Double.doubleToRawLongBits(1.0)
+				^ 0x8000000000000001L);
+		assertRoundTrips(new long[] { 0, 1000, 2000, 3000 }, new double[] { 1.0, flipped, 1.0,
+				flipped });
+	}
+
+	@Test
+	public void reusesAndWidensTheXorWindow() {
+		// the second xor fits the first one's window, the third does not.
+		assertRoundTrips(new long[] { 0, 1, 2, 3, 4 }, new double[] { 1.0, 1.5, 1.25, 1.0,
+				-1.0E300 });
+	}
+
+	@Test
+	public void keepsEveryWidthOfStepChange() {
+		// step changes at either end of each width, then past the widest.
+		final long[] changes = { 0, -64, 63, -65, 64, -256, 255, -257, 256, -2048, 2047, -2049,
+				2048, 86400000L * 365, -86400000L * 730, Long.MAX_VALUE / 4 };
+		final long[] timestamps = new long[changes.length + 2];
+		final double[] values = new double[timestamps.length];
+		long step = 5000;
+		timestamps[0] = NIGHT_START;
+		timestamps[1] = NIGHT_START + step;
+		for (int i = 0; i < changes.length; i++) {
+			step += changes[i];
+			timestamps[i + 2] = timestamps[i + 1] + step;
+			values[i + 2] = i;
+		}
+		assertRoundTrips(timestamps, values);
+	}
+
+	@Test
+	public void rejectsTruncatedBlocks() {
+		final GorillaEncoder encoder = new GorillaEncoder(100);
+		for (int i = 0; i < 100; i++) {
+			encoder.add(NIGHT_START + i * 60000L + (i % 7) * 300, Math.sin(i));
+		}
+		final byte[] block = encoder.toByteArray();
+		for (int length = 0; length < block.length; length++) {
+			final byte[] truncated = new byte[length];
+			System.arraycopy(block, 0, truncated, 0, length);
+			try {
+				final GorillaDecoder decoder = new GorillaDecoder(ByteBuffer.wrap(truncated));
+				while (decoder.next()) {
+					// read to the end
+				}
+				fail("Decoded " + length + " of " + block.length + " bytes");
+			} catch (final IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+
+	@Test
+	public void isSmallerThanRawPoints() {
+		// an eight hour night of five second epochs: the regular timestamps
+		// take about a bit each, and noisy values no more than their own bytes.
+		final GorillaEncoder encoder = new GorillaEncoder(5760);
+		long time = NIGHT_START;
+		for (int i = 0; i < 5760; i++) {
+			encoder.add(time, (i * 7919 % 1000) / 1000.0 * (i % 60 < 5 ? 50 : 1));
+			time += 5000 + (i % 13 == 0 ? 3 : 0);
+		}
+		final int size = encoder.toByteArray().length;
+		assertTrue("encoded in " + size + " bytes", size < 5760 * 9);
+	}
+
+	private static void assertRoundTrips(final long[] timestamps, final double[] values) {
+		final GorillaEncoder encoder = new GorillaEncoder(timestamps.length);
+		for (int i = 0; i < timestamps.length; i++) {
+			encoder.add(timestamps[i], values[i]);
+		}
+		assertEquals(timestamps.length, encoder.size());
+
+		final GorillaDecoder decoder = new GorillaDecoder(ByteBuffer.wrap(encoder.toByteArray()));
+		assertEquals(timestamps.length, decoder.size());
+		for (int i = 0; i < timestamps.length; i++) {
+			assertTrue(decoder.next());
+			assertEquals("timestamp of " + i, timestamps[i], decoder.getTimestamp());
+			assertEquals("value of " + i, Double.doubleToRawLongBits(values[i]),
+					Double.doubleToRawLongBits(decoder.getValue()));
+		}
+		assertFalse(decoder.next());
+	}
+}